@@ -0,0 +1,475 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* FontFile
+*
+* Reads font metadata (family, style, weight, glyph
+* count and character coverage) straight from a
+* memory-mapped sfnt file (ttf, otf, or one face of a
+* ttc) without creating a Typeface.
+*
+* Only the table directory is read when the font is
+* opened. The name, OS/2, maxp and cmap tables are
+* decoded the first time they are needed, and every
+* read goes to the mapping, so nothing but the
+* resulting strings is copied to the heap.
+*
+* Usage:
+*   FontFile font = FontUtils.open(file);
+*   String family = font.getFamilyName();
+*   boolean hasPeso = font.hasGlyph(0x20B1);
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+public final class FontFile
+{
+	private static final int TAG_TTCF = 0x74746366;	// 'ttcf'
+	private static final int TAG_NAME = 0x6E616D65;	// 'name'
+	private static final int TAG_OS2 = 0x4F532F32;	// 'OS/2'
+	private static final int TAG_MAXP = 0x6D617870;	// 'maxp'
+	private static final int TAG_CMAP = 0x636D6170;	// 'cmap'
+	private static final int TAG_HEAD = 0x68656164;	// 'head'
+
+	private static final int NAME_FAMILY = 1;
+	private static final int NAME_SUBFAMILY = 2;
+
+	private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final ByteBuffer data;
+	private final int faceCount;
+	private final int[] tags;
+	private final int[] offsets;
+	private final int[] lengths;
+
+	// Decoded on demand
+	private String familyName;
+	private String subfamilyName;
+	private boolean namesLoaded;
+	private int weight = -1;
+	private boolean italic;
+	private int glyphCount = -1;
+	private int cmapOffset = -1;
+	private int cmapFormat;
+
+	private FontFile(ByteBuffer data, int face) throws IOException
+	{
+		this.data = data;
+
+		int base = 0;
+		if(data.capacity() >= 12 && data.getInt(0) == TAG_TTCF)
+		{
+			faceCount = data.getInt(8);
+			if(face < 0 || face >= faceCount || 12 + face * 4 + 4 > data.capacity())
+				throw new IOException("Font collection has no face " + face);
+
+			base = data.getInt(12 + face * 4);
+		}
+		else
+		{
+			faceCount = 1;
+			if(face != 0)
+				throw new IOException("Font is not a collection");
+		}
+
+		if(base < 0 || base + 12 > data.capacity())
+			throw new IOException("Not an sfnt font");
+
+		// WOFF tables are compressed and can't be read in place
+		FontUtils.Format format = FontUtils.probe(slice(base));
+		if(format != FontUtils.Format.TTF && format != FontUtils.Format.OTF)
+			throw new IOException("Not an sfnt font: " + format);
+
+		int numTables = data.getShort(base + 4) & 0xFFFF;
+		if(base + 12 + numTables * 16 > data.capacity())
+			throw new IOException("Truncated table directory");
+
+		tags = new int[numTables];
+		offsets = new int[numTables];
+		lengths = new int[numTables];
+
+		for(int i = 0, rec = base + 12; i < numTables; i++, rec += 16)
+		{
+			tags[i] = data.getInt(rec);
+			offsets[i] = data.getInt(rec + 8);
+			lengths[i] = data.getInt(rec + 12);
+		}
+	}
+
+
+	/*
+	* Maps a ttf, otf or ttc file and reads it's table
+	* directory. The mapping stays valid after the file is
+	* closed, so no handle is kept open.
+	*
+	*@method  FontFile.open(file)
+	*@param   file  -  The font file
+	*
+	*@method  FontFile.open(file, face)
+	*@param   file  -  The font file
+	*@param   face  -  Index of the face inside a collection (0 for single fonts)
+	*
+	*@return  FontFile
+	*/
+	public static final FontFile open(File file) throws IOException
+	{
+		return open(file, 0);
+	}
+
+	public static final FontFile open(File file, int face) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new FontFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), face);
+		} finally {
+			raf.close();
+		}
+	}
+
+	// Wraps font data that is already in memory
+	public static final FontFile open(ByteBuffer buffer, int face) throws IOException
+	{
+		return new FontFile(buffer.slice(), face);
+	}
+
+	// Number of faces in the file (1 unless it is a collection)
+	public int getFaceCount()
+	{
+		return faceCount;
+	}
+
+	public int getTableCount()
+	{
+		return tags.length;
+	}
+
+	public boolean hasTable(String tag)
+	{
+		if(tag.length() != 4)
+			return false;
+
+		int value = 0;
+		for(int i = 0; i < 4; i++)
+			value = (value << 8) | (tag.charAt(i) & 0xFF);
+
+		return find(value) >= 0;
+	}
+
+	// Font family name (name ID 1), or null if it has none
+	public synchronized String getFamilyName()
+	{
+		loadNames();
+		return familyName;
+	}
+
+	// Style name (name ID 2), e.g. "Bold Italic", or null if it has none
+	public synchronized String getSubfamilyName()
+	{
+		loadNames();
+		return subfamilyName;
+	}
+
+	// Weight class, 100 (thin) to 900 (black); 400 is regular
+	public synchronized int getWeight()
+	{
+		loadStyle();
+		return weight;
+	}
+
+	public synchronized boolean isItalic()
+	{
+		loadStyle();
+		return italic;
+	}
+
+	// Number of glyphs in the font, or 0 if unknown
+	public synchronized int getGlyphCount()
+	{
+		if(glyphCount < 0)
+		{
+			int maxp = find(TAG_MAXP);
+			glyphCount = (maxp >= 0 && lengths[maxp] >= 6) ? data.getShort(offsets[maxp] + 4) & 0xFFFF : 0;
+		}
+
+		return glyphCount;
+	}
+
+
+	/*
+	* Looks a character up in the font's Unicode cmap
+	* (format 4 or 12 subtable) without decoding the rest
+	* of the table.
+	*
+	*@method  font.hasGlyph(codePoint)
+	*@param   codePoint  -  The Unicode code point
+	*@return  boolean  -  True if the font maps the character to a glyph
+	*/
+	public boolean hasGlyph(int codePoint)
+	{
+		return getGlyphId(codePoint) != 0;
+	}
+
+	// The glyph the character maps to, or 0 (.notdef) if it isn't covered
+	public int getGlyphId(int codePoint)
+	{
+		int sub;
+		int format;
+
+		synchronized(this)
+		{
+			if(cmapOffset < 0)
+				loadCmap();
+
+			sub = cmapOffset;
+			format = cmapFormat;
+		}
+
+		if(sub == 0 || codePoint < 0)
+			return 0;
+
+		try {
+			return (format == 12) ? lookup12(sub, codePoint) : lookup4(sub, codePoint);
+		} catch(IndexOutOfBoundsException e) {
+			return 0;
+		}
+	}
+
+	private void loadNames()
+	{
+		if(namesLoaded)
+			return;
+
+		namesLoaded = true;
+		int table = find(TAG_NAME);
+		if(table < 0)
+			return;
+
+		try {
+			int base = offsets[table];
+			int count = data.getShort(base + 2) & 0xFFFF;
+			int strings = base + (data.getShort(base + 4) & 0xFFFF);
+			int familyRank = 0;
+			int subfamilyRank = 0;
+
+			for(int i = 0, rec = base + 6; i < count; i++, rec += 12)
+			{
+				int nameId = data.getShort(rec + 6) & 0xFFFF;
+				if(nameId != NAME_FAMILY && nameId != NAME_SUBFAMILY)
+					continue;
+
+				int rank = rank(data.getShort(rec) & 0xFFFF, data.getShort(rec + 2) & 0xFFFF, data.getShort(rec + 4) & 0xFFFF);
+				if(rank <= ((nameId == NAME_FAMILY) ? familyRank : subfamilyRank))
+					continue;
+
+				String value = decode(data.getShort(rec) & 0xFFFF, strings + (data.getShort(rec + 10) & 0xFFFF), data.getShort(rec + 8) & 0xFFFF);
+				if(nameId == NAME_FAMILY)
+				{
+					familyName = value;
+					familyRank = rank;
+				}
+				else
+				{
+					subfamilyName = value;
+					subfamilyRank = rank;
+				}
+			}
+		} catch(IndexOutOfBoundsException e) {
+			// Keep whatever was decoded before the damaged record
+		}
+	}
+
+	// Windows US English first, then any Windows Unicode name, then Mac Roman English
+	private static int rank(int platform, int encoding, int language)
+	{
+		if(platform == 3 && (encoding == 1 || encoding == 10))
+			return (language == 0x409) ? 3 : 2;
+
+		if(platform == 0)
+			return 2;
+
+		if(platform == 1 && encoding == 0 && language == 0)
+			return 1;
+
+		return 0;
+	}
+
+	private String decode(int platform, int offset, int length)
+	{
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = data.get(offset + i);
+
+		// Mac Roman matches Latin-1 for the ASCII names fonts use in practice
+		return new String(bytes, (platform == 1) ? ISO_8859_1 : UTF_16BE);
+	}
+
+	private void loadStyle()
+	{
+		if(weight >= 0)
+			return;
+
+		weight = 400;
+		int os2 = find(TAG_OS2);
+		if(os2 >= 0 && lengths[os2] >= 64)
+		{
+			weight = data.getShort(offsets[os2] + 4) & 0xFFFF;
+			italic = (data.getShort(offsets[os2] + 62) & 0x0001) != 0;
+			return;
+		}
+
+		// No OS/2 (older Mac fonts): fall back to head.macStyle
+		int head = find(TAG_HEAD);
+		if(head >= 0 && lengths[head] >= 46)
+		{
+			int macStyle = data.getShort(offsets[head] + 44);
+			weight = ((macStyle & 0x0001) != 0) ? 700 : 400;
+			italic = (macStyle & 0x0002) != 0;
+		}
+	}
+
+	private void loadCmap()
+	{
+		cmapOffset = 0;
+		int table = find(TAG_CMAP);
+		if(table < 0)
+			return;
+
+		try {
+			int base = offsets[table];
+			int count = data.getShort(base + 2) & 0xFFFF;
+			int best = 0;
+
+			for(int i = 0, rec = base + 4; i < count; i++, rec += 8)
+			{
+				int platform = data.getShort(rec) & 0xFFFF;
+				int encoding = data.getShort(rec + 2) & 0xFFFF;
+				int offset = base + data.getInt(rec + 4);
+				int format = data.getShort(offset) & 0xFFFF;
+				int rank;
+
+				// Full-Unicode format 12 beats BMP-only format 4
+				if(format == 12 && ((platform == 3 && encoding == 10) || platform == 0))
+					rank = 2;
+				else if(format == 4 && ((platform == 3 && encoding == 1) || platform == 0))
+					rank = 1;
+				else
+					continue;
+
+				if(rank > best)
+				{
+					best = rank;
+					cmapOffset = offset;
+					cmapFormat = format;
+				}
+			}
+		} catch(IndexOutOfBoundsException e) {
+			cmapOffset = 0;
+		}
+	}
+
+	// Segment mapping to delta values (BMP)
+	private int lookup4(int sub, int codePoint)
+	{
+		if(codePoint > 0xFFFF)
+			return 0;
+
+		int segCount = (data.getShort(sub + 6) & 0xFFFF) / 2;
+		int endCodes = sub + 14;
+		int startCodes = endCodes + segCount * 2 + 2;
+		int deltas = startCodes + segCount * 2;
+		int rangeOffsets = deltas + segCount * 2;
+
+		// First segment whose end code is >= codePoint
+		int lo = 0;
+		int hi = segCount - 1;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if((data.getShort(endCodes + mid * 2) & 0xFFFF) < codePoint)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		int start = data.getShort(startCodes + lo * 2) & 0xFFFF;
+		int end = data.getShort(endCodes + lo * 2) & 0xFFFF;
+		if(codePoint < start || codePoint > end)
+			return 0;
+
+		int delta = data.getShort(deltas + lo * 2);
+		int rangeOffset = data.getShort(rangeOffsets + lo * 2) & 0xFFFF;
+		if(rangeOffset == 0)
+			return (codePoint + delta) & 0xFFFF;
+
+		int glyph = data.getShort(rangeOffsets + lo * 2 + rangeOffset + (codePoint - start) * 2) & 0xFFFF;
+		return (glyph == 0) ? 0 : (glyph + delta) & 0xFFFF;
+	}
+
+	// Segmented coverage (full Unicode)
+	private int lookup12(int sub, int codePoint)
+	{
+		int groups = data.getInt(sub + 12);
+		int base = sub + 16;
+		int lo = 0;
+		int hi = groups - 1;
+
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int rec = base + mid * 12;
+
+			if(codePoint < data.getInt(rec))
+				hi = mid - 1;
+			else if(codePoint > data.getInt(rec + 4))
+				lo = mid + 1;
+			else
+				return data.getInt(rec + 8) + (codePoint - data.getInt(rec));
+		}
+
+		return 0;
+	}
+
+	// Index of the table in the directory, or -1 if it is missing or out of bounds
+	private int find(int tag)
+	{
+		for(int i = 0; i < tags.length; i++)
+			if(tags[i] == tag)
+				return (offsets[i] >= 0 && lengths[i] >= 0 && (long) offsets[i] + lengths[i] <= data.capacity()) ? i : -1;
+
+		return -1;
+	}
+
+	private ByteBuffer slice(int offset)
+	{
+		ByteBuffer dup = data.duplicate();
+		dup.position(offset);
+		return dup;
+	}
+}
@@ -0,0 +1,355 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* FontIndex
+*
+* A small persistent index of validated font files, so
+* an app does not have to re-probe every font on each
+* cold start. Each record keeps the path, size, mtime,
+* format and basic sfnt header data (table count, or
+* the number of faces of a collection).
+*
+* The index file is loaded with a single read. On
+* reconcile only a stat is done per font; files whose
+* size or mtime changed (or that are new) are probed
+* again and missing files are dropped.
+*
+* Usage:
+*   FontIndex index = FontIndex.load(new File(cacheDir, "fonts.idx"));
+*   index.reconcile(new File("/system/fonts"), userFonts);
+*   index.save();
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.font;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class FontIndex
+{
+	private static final int MAGIC = 0x46494458;	// 'FIDX'
+	private static final int VERSION = 1;
+	private static final int PROBE_LENGTH = 14;
+
+	private final File file;
+	private final Map<String, Entry> entries;
+	private boolean dirty;
+
+	private FontIndex(File file, Map<String, Entry> entries)
+	{
+		this.file = file;
+		this.entries = entries;
+	}
+
+
+	/*
+	* Loads an index file. A missing, unreadable or
+	* outdated file yields an empty index, which the next
+	* reconcile fills in.
+	*
+	*@method  FontIndex.load(file)
+	*@param   file  -  Where the index is stored
+	*@return  FontIndex
+	*/
+	public static final FontIndex load(File file)
+	{
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+
+		if(file.isFile())
+		{
+			try {
+				byte[] data = new byte[(int) file.length()];
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					raf.readFully(data);
+				} finally {
+					raf.close();
+				}
+
+				read(data, entries);
+			} catch(IOException e) {
+				entries.clear();
+			}
+		}
+
+		return new FontIndex(file, entries);
+	}
+
+
+	/*
+	* Brings the index up to date with the given folders.
+	* Unchanged files cost one stat; changed or new files
+	* get a header probe; files that vanished are removed.
+	*
+	*@method  index.reconcile(roots)
+	*@param   roots  -  The font folders (or single font files) to index
+	*@return  int  -  The number of files that had to be probed
+	*/
+	public synchronized int reconcile(File... roots)
+	{
+		Set<String> seen = new HashSet<String>();
+		Deque<File> pending = new ArrayDeque<File>();
+		int probed = 0;
+
+		for(File root : roots)
+			pending.push(root);
+
+		while(!pending.isEmpty())
+		{
+			File current = pending.pop();
+
+			if(current.isDirectory())
+			{
+				File[] files = current.listFiles();
+				if(files != null)
+					for(File child : files)
+						pending.push(child);
+				continue;
+			}
+
+			if(!FontScanner.isFontName(current.getName()))
+				continue;
+
+			String path = current.getAbsolutePath();
+			long size = current.length();
+			long mtime = current.lastModified();
+			Entry entry = entries.get(path);
+			seen.add(path);
+
+			if(entry != null && entry.size == size && entry.lastModified == mtime)
+				continue;
+
+			entries.put(path, probe(path, size, mtime));
+			dirty = true;
+			probed++;
+		}
+
+		Iterator<String> it = entries.keySet().iterator();
+		while(it.hasNext())
+			if(!seen.contains(it.next()))
+			{
+				it.remove();
+				dirty = true;
+			}
+
+		return probed;
+	}
+
+
+	/*
+	* Writes the index back to it's file if it changed.
+	* The file is replaced atomically.
+	*
+	*@method  index.save()
+	*@return  boolean  -  The success state of the operation
+	*/
+	public synchronized boolean save()
+	{
+		if(!dirty)
+			return true;
+
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+
+				for(Entry entry : entries.values())
+				{
+					out.writeUTF(entry.path);
+					out.writeLong(entry.size);
+					out.writeLong(entry.lastModified);
+					out.writeByte(entry.format.ordinal());
+					out.writeShort(entry.numTables);
+					out.writeInt(entry.numFonts);
+				}
+			} finally {
+				out.close();
+			}
+
+			if(!tmp.renameTo(file))
+			{
+				file.delete();
+				if(!tmp.renameTo(file))
+					return false;
+			}
+
+			dirty = false;
+			return true;
+		} catch(IOException e) {
+			tmp.delete();
+			return false;
+		}
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	// The record of a font, or null if it is not indexed
+	public synchronized Entry get(File font)
+	{
+		return entries.get(font.getAbsolutePath());
+	}
+
+	public synchronized List<Entry> getEntries()
+	{
+		return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+	}
+
+	// Indexed fonts of the given format
+	public synchronized List<Entry> getEntries(FontUtils.Format format)
+	{
+		List<Entry> list = new ArrayList<Entry>();
+		for(Entry entry : entries.values())
+			if(entry.format == format)
+				list.add(entry);
+
+		return list;
+	}
+
+	private static void read(byte[] data, Map<String, Entry> entries) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		if(in.readInt() != MAGIC || in.readInt() != VERSION)
+			throw new IOException("Unknown font index format");
+
+		FontUtils.Format[] formats = FontUtils.Format.values();
+		int count = in.readInt();
+
+		for(int i = 0; i < count; i++)
+		{
+			String path = in.readUTF();
+			long size = in.readLong();
+			long mtime = in.readLong();
+			int format = in.readUnsignedByte();
+			int numTables = in.readUnsignedShort();
+			int numFonts = in.readInt();
+
+			if(format >= formats.length)
+				throw new IOException("Unknown font format " + format);
+
+			entries.put(path, new Entry(path, size, mtime, formats[format], numTables, numFonts));
+		}
+	}
+
+	private static Entry probe(String path, long size, long mtime)
+	{
+		ByteBuffer header = ByteBuffer.allocate(PROBE_LENGTH);
+		RandomAccessFile raf = null;
+
+		try {
+			raf = new RandomAccessFile(path, "r");
+			int len = raf.read(header.array(), 0, PROBE_LENGTH);
+			header.limit(Math.max(len, 0));
+		} catch(IOException e) {
+			header.limit(0);
+		} finally {
+			try {
+				if(raf != null)
+					raf.close();
+			} catch(IOException e) {}
+		}
+
+		FontUtils.Format format = FontUtils.probe(header);
+		int numTables = 0;
+		int numFonts = 0;
+
+		switch(format)
+		{
+			case TTF:
+			case OTF:
+				numFonts = 1;
+				numTables = (header.limit() >= 6) ? header.getShort(4) & 0xFFFF : 0;
+				break;
+
+			// ttcf, version, numFonts
+			case TTC:
+				numFonts = (header.limit() >= 12) ? header.getInt(8) : 0;
+				break;
+
+			// wOFF, flavor, length, numTables
+			case WOFF:
+			case WOFF2:
+				numFonts = 1;
+				numTables = (header.limit() >= 14) ? header.getShort(12) & 0xFFFF : 0;
+				break;
+
+			default:
+				break;
+		}
+
+		return new Entry(path, size, mtime, format, numTables, numFonts);
+	}
+
+	/*
+	* One indexed font file
+	*/
+	public static final class Entry
+	{
+		public final String path;
+		public final long size;
+		public final long lastModified;
+		public final FontUtils.Format format;
+		public final int numTables;
+		public final int numFonts;
+
+		Entry(String path, long size, long lastModified, FontUtils.Format format, int numTables, int numFonts)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.format = format;
+			this.numTables = numTables;
+			this.numFonts = numFonts;
+		}
+
+		public File getFile()
+		{
+			return new File(path);
+		}
+
+		public boolean isValid()
+		{
+			return format != FontUtils.Format.INVALID;
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* FontScanner
+*
+* Walks one or more font folders on a pool of worker
+* threads and classifies every font file (by extension:
+* ttf, otf, ttc, otc, woff, woff2) with a header probe.
+* Results are streamed to the callback as soon as each
+* file is probed, so a font picker can fill in while
+* the scan is still running.
+*
+* Callbacks run on the worker threads; post to the main
+* thread before touching views.
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.font;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class FontScanner
+{
+	private static final String[] EXTENSIONS = {".ttf", ".otf", ".ttc", ".otc", ".woff", ".woff2"};
+
+	// Font files probed per task, so a flat folder is spread across the pool
+	private static final int BATCH = 8;
+
+	private final ExecutorService pool;
+	private final Callback callback;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger scanned = new AtomicInteger();
+
+	private volatile boolean cancelled;
+	private volatile boolean done;
+
+	private FontScanner(int threads, Callback callback)
+	{
+		this.callback = callback;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "FontScanner-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
+	/*
+	* Starts scanning the given folders (recursively) in
+	* parallel and returns a handle to the scan.
+	*
+	*@method  FontScanner.scan(callback, roots)
+	*@param   callback  -  Receives each result and the completion
+	*@param   roots  -  The folders (or single font files) to scan
+	*
+	*@method  FontScanner.scan(threads, callback, roots)
+	*@param   threads  -  Number of worker threads
+	*@param   callback  -  Receives each result and the completion
+	*@param   roots  -  The folders (or single font files) to scan
+	*
+	*@return  FontScanner  -  The running scan
+	*/
+	public static final FontScanner scan(Callback callback, File... roots)
+	{
+		// Probing is I/O bound, so use more threads than cores
+		int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() * 2));
+		return scan(threads, callback, roots);
+	}
+
+	public static final FontScanner scan(int threads, Callback callback, File... roots)
+	{
+		FontScanner scanner = new FontScanner(threads, callback);
+
+		scanner.pending.incrementAndGet();
+		for(File root : roots)
+			scanner.submit(root);
+		scanner.finish();
+
+		return scanner;
+	}
+
+	// Stops submitting new work; files already being probed still report
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	// Number of font files probed so far
+	public int getScannedCount()
+	{
+		return scanned.get();
+	}
+
+	public synchronized void await() throws InterruptedException
+	{
+		while(!done)
+			wait();
+	}
+
+	private void submit(final File file)
+	{
+		if(cancelled)
+			return;
+
+		pending.incrementAndGet();
+		pool.execute(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					visit(file);
+				} finally {
+					finish();
+				}
+			}
+		});
+	}
+
+	private void submit(final List<File> files)
+	{
+		if(cancelled)
+			return;
+
+		pending.incrementAndGet();
+		pool.execute(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					for(File file : files)
+					{
+						if(cancelled)
+							return;
+
+						probe(file);
+					}
+				} finally {
+					finish();
+				}
+			}
+		});
+	}
+
+	private void visit(File file)
+	{
+		if(cancelled)
+			return;
+
+		if(file.isDirectory())
+		{
+			File[] files = file.listFiles();
+			if(files == null)
+				return;
+
+			List<File> batch = new ArrayList<File>(BATCH);
+			for(File child : files)
+			{
+				if(cancelled)
+					return;
+
+				if(child.isDirectory())
+					submit(child);
+				else if(isFontName(child.getName()))
+				{
+					batch.add(child);
+					if(batch.size() == BATCH)
+					{
+						submit(batch);
+						batch = new ArrayList<File>(BATCH);
+					}
+				}
+			}
+
+			if(!batch.isEmpty())
+				submit(batch);
+		}
+		else
+			probe(file);
+	}
+
+	private void probe(File file)
+	{
+		if(!isFontName(file.getName()))
+			return;
+
+		FontUtils.Format format = FontUtils.probe(file);
+		scanned.incrementAndGet();
+		callback.onFont(file, format);
+	}
+
+	private void finish()
+	{
+		if(pending.decrementAndGet() != 0)
+			return;
+
+		pool.shutdown();
+		try {
+			callback.onComplete(scanned.get(), cancelled);
+		} finally {
+			synchronized(this)
+			{
+				done = true;
+				notifyAll();
+			}
+		}
+	}
+
+	static boolean isFontName(String name)
+	{
+		int dot = name.lastIndexOf('.');
+		if(dot < 0)
+			return false;
+
+		String ext = name.substring(dot);
+		for(String font : EXTENSIONS)
+			if(font.equalsIgnoreCase(ext))
+				return true;
+
+		return false;
+	}
+
+	public interface Callback
+	{
+		// Called once per font file; format is INVALID if the header doesn't match any font format
+		void onFont(File file, FontUtils.Format format);
+
+		// Called once, after the last result
+		void onComplete(int scanned, boolean cancelled);
+	}
+}
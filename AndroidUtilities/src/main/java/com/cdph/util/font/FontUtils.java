@@ -16,39 +16,58 @@
 
 package com.cdph.util.font;
 
+import com.cdph.util.io.ContentSniffer;
 import java.io.File;
-import static com.cdph.util.io.FileUtils.toBytes;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 public final class FontUtils
 {
 	private static final byte[] TTF_MAGIC = {0x00, 0x01, 0x00, 0x00, 0x00};
 	private static final byte[] OTF_MAGIC = {0x4F, 0x54, 0x54, 0x4F, 0x00};
+	private static final int HEADER_LENGTH = 5;
+
+	/*
+	* Font container formats recognized by FontUtils.probe
+	*/
+	public enum Format
+	{
+		TTF, OTF, TTC, WOFF, WOFF2, INVALID
+	}
 
 	
 	/*
 	* Verifies a .ttf file if it's real or not by checking
 	* it's magic numbers: 00 01 00 00 00
 	*
+	* Only the first 5 bytes of the file are read.
+	*
 	*@method  FontUtils.isRealTTF(ttf)
 	*@param   ttf  -  The ttf file to be verified
+	*
+	*@method  FontUtils.isRealTTF(is)
+	*@param   is  -  Stream positioned at the start of the font (5 bytes are consumed, it is not closed)
+	*
+	*@method  FontUtils.isRealTTF(buffer)
+	*@param   buffer  -  Font data starting at the buffer's position (the position is not changed)
+	*
 	*@return  boolean
 	*/
 	public static final boolean isRealTTF(File ttf)
 	{
-		boolean real = false;
-		byte[] data = toBytes(ttf);
+		return ttf.getName().toLowerCase().endsWith("ttf") && matches(readHeader(ttf), TTF_MAGIC);
+	}
 
-		real = ttf.getName().toLowerCase().endsWith("ttf");
-		real = (real) ? (data != null) : real;
-		real = (real) ? (
-			inBytes(data[0], TTF_MAGIC) &&
-			inBytes(data[1], TTF_MAGIC) &&
-			inBytes(data[2], TTF_MAGIC) &&
-			inBytes(data[3], TTF_MAGIC) &&
-			inBytes(data[4], TTF_MAGIC)
-			) : real;
+	public static final boolean isRealTTF(InputStream is)
+	{
+		return matches(readHeader(is), TTF_MAGIC);
+	}
 
-		return real;
+	public static final boolean isRealTTF(ByteBuffer buffer)
+	{
+		return matches(buffer, TTF_MAGIC);
 	}
 
 	
@@ -56,34 +75,198 @@ public final class FontUtils
 	* Verifies a .otf file if it's real or not by checking
 	* it's magic numbers: 4F 54 54 4F 00
 	*
+	* Only the first 5 bytes of the file are read.
+	*
 	*@method  FontUtils.isRealOTF(otf)
 	*@param   otf  -  The otf file to be verified
+	*
+	*@method  FontUtils.isRealOTF(is)
+	*@param   is  -  Stream positioned at the start of the font (5 bytes are consumed, it is not closed)
+	*
+	*@method  FontUtils.isRealOTF(buffer)
+	*@param   buffer  -  Font data starting at the buffer's position (the position is not changed)
+	*
 	*@return  boolean
 	*/
 	public static final boolean isRealOTF(File otf)
 	{
-		boolean real = false;
-		byte[] data = toBytes(otf);
+		return otf.getName().toLowerCase().endsWith("otf") && matches(readHeader(otf), OTF_MAGIC);
+	}
+
+	public static final boolean isRealOTF(InputStream is)
+	{
+		return matches(readHeader(is), OTF_MAGIC);
+	}
+
+	public static final boolean isRealOTF(ByteBuffer buffer)
+	{
+		return matches(buffer, OTF_MAGIC);
+	}
+
+	
+	/*
+	* Identifies the format of a font from it's first 4
+	* bytes, regardless of the file's extension, using the
+	* font signatures of ContentSniffer.
+	*
+	*@method  FontUtils.probe(font)
+	*@param   font  -  The font file to be probed
+	*
+	*@method  FontUtils.probe(is)
+	*@param   is  -  Stream positioned at the start of the font (5 bytes are consumed, it is not closed)
+	*
+	*@method  FontUtils.probe(buffer)
+	*@param   buffer  -  Font data starting at the buffer's position (the position is not changed)
+	*
+	*@return  FontUtils.Format  -  The detected format, or INVALID
+	*/
+	public static final Format probe(File font)
+	{
+		return probe(readHeader(font));
+	}
+
+	public static final Format probe(InputStream is)
+	{
+		return probe(readHeader(is));
+	}
+
+	public static final Format probe(ByteBuffer buffer)
+	{
+		return toFormat(ContentSniffer.getDefault().sniff(buffer));
+	}
+
+
+	/*
+	* Opens a ttf, otf or ttc file for reading it's
+	* metadata (names, weight, glyph count, cmap coverage).
+	* Only the table directory is read up front; see
+	* FontFile.
+	*
+	*@method  FontUtils.open(font)
+	*@param   font  -  The font file
+	*
+	*@method  FontUtils.open(font, face)
+	*@param   font  -  The font file
+	*@param   face  -  Index of the face inside a collection
+	*
+	*@return  FontFile
+	*/
+	public static final FontFile open(File font) throws IOException
+	{
+		return FontFile.open(font, 0);
+	}
 
-		real = otf.getName().toLowerCase().endsWith("otf");
-		real = (real) ? (data != null) : real;
-		real = (real) ? (
-			inBytes(data[0], OTF_MAGIC) &&
-			inBytes(data[1], OTF_MAGIC) &&
-			inBytes(data[2], OTF_MAGIC) &&
-			inBytes(data[3], OTF_MAGIC) &&
-			inBytes(data[4], OTF_MAGIC)
-			) : real;
+	public static final FontFile open(File font, int face) throws IOException
+	{
+		return FontFile.open(font, face);
+	}
+
+	private static Format probe(byte[] header)
+	{
+		if(header == null)
+			return Format.INVALID;
+
+		return toFormat(ContentSniffer.getDefault().sniff(header, 0, header.length));
+	}
+
+	private static Format toFormat(String type)
+	{
+		if(type == null)
+			return Format.INVALID;
 
-		return real;
+		switch(type)
+		{
+			case "font/ttf":
+				return Format.TTF;
+			case "font/otf":
+				return Format.OTF;
+			case "font/collection":
+				return Format.TTC;
+			case "font/woff":
+				return Format.WOFF;
+			case "font/woff2":
+				return Format.WOFF2;
+			default:
+				return Format.INVALID;
+		}
 	}
 
-	private static boolean inBytes(byte target, byte[] data)
+	// Reads up to HEADER_LENGTH bytes with one positional read, or null on error
+	private static byte[] readHeader(File file)
 	{
-		for(byte bit : data)
-			if(target == bit)
-				return true;
-		
-		return false;
+		RandomAccessFile raf = null;
+		byte[] header = null;
+
+		try {
+			raf = new RandomAccessFile(file, "r");
+			header = new byte[HEADER_LENGTH];
+			header = trim(header, raf.read(header, 0, HEADER_LENGTH));
+		} catch(IOException e) {
+			header = null;
+		} finally {
+			try {
+				if(raf != null)
+					raf.close();
+			} catch(IOException e) {}
+		}
+
+		return header;
+	}
+
+	private static byte[] readHeader(InputStream is)
+	{
+		byte[] header = new byte[HEADER_LENGTH];
+		int read = 0;
+
+		try {
+			while(read < HEADER_LENGTH)
+			{
+				int len = is.read(header, read, HEADER_LENGTH - read);
+				if(len == -1)
+					break;
+				read += len;
+			}
+		} catch(IOException e) {
+			return null;
+		}
+
+		return trim(header, read);
+	}
+
+	private static byte[] trim(byte[] header, int length)
+	{
+		if(length == header.length)
+			return header;
+		if(length <= 0)
+			return new byte[0];
+
+		byte[] trimmed = new byte[length];
+		System.arraycopy(header, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	private static boolean matches(byte[] header, byte[] magic)
+	{
+		if(header == null || header.length < magic.length)
+			return false;
+
+		for(int i = 0; i < magic.length; i++)
+			if(header[i] != magic[i])
+				return false;
+
+		return true;
+	}
+
+	private static boolean matches(ByteBuffer buffer, byte[] magic)
+	{
+		int pos = buffer.position();
+		if(buffer.limit() - pos < magic.length)
+			return false;
+
+		for(int i = 0; i < magic.length; i++)
+			if(buffer.get(pos + i) != magic[i])
+				return false;
+
+		return true;
 	}
 }
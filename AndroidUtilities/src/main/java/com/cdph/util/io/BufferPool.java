@@ -0,0 +1,267 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* BufferPool
+*
+* Recycles the I/O buffers used by FileUtils, JarUtils
+* and friends, so bulk jobs stop allocating (and the GC
+* stops collecting) a new buffer per file.
+*
+* Buffers come in power-of-two size classes from 4 KB to
+* 1 MB. Each thread keeps a couple of buffers per class
+* for itself; extras go to a small shared stash that
+* other threads can draw from. Larger requests are
+* allocated normally and never pooled.
+*
+* Direct ByteBuffers (for FileChannel I/O, which avoids
+* an extra copy through the heap) are pooled the same
+* way.
+*
+* Always release what you acquire, and never touch a
+* buffer after releasing it:
+*   byte[] buf = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+*   try { ... } finally { BufferPool.release(buf); }
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class BufferPool
+{
+	public static final int DEFAULT_SIZE = 64 * 1024;
+
+	private static final int MIN_SHIFT = 12;		// 4 KB
+	private static final int MAX_SHIFT = 20;		// 1 MB
+	private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+	private static final int LOCAL_DEPTH = 2;		// per thread, per class
+	private static final int SHARED_LIMIT = 8;		// per class
+
+	private static final Stash<byte[]> HEAP = new Stash<byte[]>();
+	private static final Stash<ByteBuffer> DIRECT = new Stash<ByteBuffer>();
+	private static final AtomicLong allocations = new AtomicLong();
+
+	private static final ThreadLocal<Object[][]> LOCAL_HEAP = new ThreadLocal<Object[][]>() {
+		@Override
+		protected Object[][] initialValue()
+		{
+			return new Object[CLASSES][LOCAL_DEPTH];
+		}
+	};
+
+	private static final ThreadLocal<Object[][]> LOCAL_DIRECT = new ThreadLocal<Object[][]>() {
+		@Override
+		protected Object[][] initialValue()
+		{
+			return new Object[CLASSES][LOCAL_DEPTH];
+		}
+	};
+
+	private BufferPool()
+	{}
+
+
+	/*
+	* Gets a byte array of at least the given size. The
+	* contents are whatever the previous user left in it.
+	*
+	*@method  BufferPool.acquire(minSize)
+	*@param   minSize  -  The smallest usable length
+	*@return  byte[]  -  A buffer, possibly longer than requested
+	*/
+	public static final byte[] acquire(int minSize)
+	{
+		int index = classOf(minSize);
+		if(index < 0)
+		{
+			allocations.incrementAndGet();
+			return new byte[minSize];
+		}
+
+		byte[] buffer = (byte[]) take(LOCAL_HEAP.get()[index]);
+		if(buffer == null)
+			buffer = HEAP.poll(index);
+
+		if(buffer == null)
+		{
+			allocations.incrementAndGet();
+			buffer = new byte[1 << (index + MIN_SHIFT)];
+		}
+
+		return buffer;
+	}
+
+
+	/*
+	* Returns a buffer from acquire() to the pool. Arrays
+	* that don't match a size class (including null) are
+	* ignored.
+	*
+	*@method  BufferPool.release(buffer)
+	*@param   buffer  -  The buffer to recycle
+	*/
+	public static final void release(byte[] buffer)
+	{
+		if(buffer == null)
+			return;
+
+		int index = exactClassOf(buffer.length);
+		if(index >= 0 && !put(LOCAL_HEAP.get()[index], buffer))
+			HEAP.offer(index, buffer);
+	}
+
+
+	/*
+	* Gets a cleared direct ByteBuffer with a capacity of
+	* at least the given size.
+	*
+	*@method  BufferPool.acquireDirect(minSize)
+	*@param   minSize  -  The smallest usable capacity
+	*@return  ByteBuffer  -  A direct buffer with position 0 and limit == capacity
+	*/
+	public static final ByteBuffer acquireDirect(int minSize)
+	{
+		int index = classOf(minSize);
+		if(index < 0)
+		{
+			allocations.incrementAndGet();
+			return ByteBuffer.allocateDirect(minSize);
+		}
+
+		ByteBuffer buffer = (ByteBuffer) take(LOCAL_DIRECT.get()[index]);
+		if(buffer == null)
+			buffer = DIRECT.poll(index);
+
+		if(buffer == null)
+		{
+			allocations.incrementAndGet();
+			buffer = ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	public static final void releaseDirect(ByteBuffer buffer)
+	{
+		if(buffer == null || !buffer.isDirect())
+			return;
+
+		int index = exactClassOf(buffer.capacity());
+		if(index >= 0 && !put(LOCAL_DIRECT.get()[index], buffer))
+			DIRECT.offer(index, buffer);
+	}
+
+	// Number of buffers the pool had to allocate (a steady-state job should stop increasing this)
+	public static final long getAllocationCount()
+	{
+		return allocations.get();
+	}
+
+	private static Object take(Object[] slots)
+	{
+		for(int i = slots.length - 1; i >= 0; i--)
+			if(slots[i] != null)
+			{
+				Object buffer = slots[i];
+				slots[i] = null;
+				return buffer;
+			}
+
+		return null;
+	}
+
+	private static boolean put(Object[] slots, Object buffer)
+	{
+		for(int i = 0; i < slots.length; i++)
+			if(slots[i] == null)
+			{
+				slots[i] = buffer;
+				return true;
+			}
+
+		return false;
+	}
+
+	// Smallest class that fits size, or -1 if it is too large to pool
+	private static int classOf(int size)
+	{
+		if(size <= (1 << MIN_SHIFT))
+			return 0;
+		if(size > (1 << MAX_SHIFT))
+			return -1;
+
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+
+	private static int exactClassOf(int length)
+	{
+		int index = classOf(length);
+		return (index >= 0 && length == (1 << (index + MIN_SHIFT))) ? index : -1;
+	}
+
+	/*
+	* Bounded shared overflow for buffers released
+	* while the releasing thread's own slots are full
+	*/
+	private static final class Stash<T>
+	{
+		private final Queue<T>[] queues;
+		private final AtomicInteger[] sizes;
+
+		@SuppressWarnings("unchecked")
+		Stash()
+		{
+			queues = (Queue<T>[]) new Queue<?>[CLASSES];
+			sizes = new AtomicInteger[CLASSES];
+
+			for(int i = 0; i < CLASSES; i++)
+			{
+				queues[i] = new ConcurrentLinkedQueue<T>();
+				sizes[i] = new AtomicInteger();
+			}
+		}
+
+		T poll(int index)
+		{
+			T buffer = queues[index].poll();
+			if(buffer != null)
+				sizes[index].decrementAndGet();
+
+			return buffer;
+		}
+
+		void offer(int index, T buffer)
+		{
+			if(sizes[index].incrementAndGet() > SHARED_LIMIT)
+			{
+				sizes[index].decrementAndGet();
+				return;
+			}
+
+			queues[index].offer(buffer);
+		}
+	}
+}
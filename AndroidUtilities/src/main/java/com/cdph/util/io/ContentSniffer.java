@@ -0,0 +1,470 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* ContentSniffer
+*
+* Identifies a file's content type (as a MIME type) from
+* it's leading bytes, regardless of it's name.
+*
+* Every signature is a byte pattern at a fixed offset,
+* where "??" matches any byte. The registry is compiled
+* into one byte trie, so a single walk over the header
+* checks all formats at once, and the longest matching
+* signature wins (e.g. a JAR over a plain ZIP, or M4A
+* audio over a generic MP4).
+*
+* Signature syntax: hex bytes, "??" wildcards ("??*n"
+* for n of them) and quoted ASCII, separated by spaces,
+* e.g.
+*   "'RIFF' ??*4 'WEBP'"
+*
+* Usage:
+*   String type = ContentSniffer.getDefault().sniff(file);
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ContentSniffer
+{
+	private static final int WILDCARD = -1;
+
+	// {type, offset, signature}
+	private static final Object[][] SIGNATURES = {
+		// Fonts
+		{"font/ttf", 0, "00 01 00 00"},
+		{"font/ttf", 0, "'true'"},
+		{"font/otf", 0, "'OTTO'"},
+		{"font/collection", 0, "'ttcf'"},
+		{"font/woff", 0, "'wOFF'"},
+		{"font/woff2", 0, "'wOF2'"},
+
+		// Images
+		{"image/png", 0, "89 50 4E 47 0D 0A 1A 0A"},
+		{"image/jpeg", 0, "FF D8 FF"},
+		{"image/gif", 0, "'GIF87a'"},
+		{"image/gif", 0, "'GIF89a'"},
+		{"image/bmp", 0, "'BM'"},
+		{"image/webp", 0, "'RIFF' ??*4 'WEBP'"},
+		{"image/x-icon", 0, "00 00 01 00"},
+		{"image/tiff", 0, "'II' 2A 00"},
+		{"image/tiff", 0, "'MM' 00 2A"},
+		{"image/heic", 4, "'ftypheic'"},
+		{"image/heic", 4, "'ftypheix'"},
+		{"image/heif", 4, "'ftypmif1'"},
+
+		// Archives and documents
+		{"application/zip", 0, "'PK' 03 04"},
+		{"application/zip", 0, "'PK' 05 06"},
+		{"application/java-archive", 0, "'PK' 03 04 ??*26 'META-INF/'"},
+		{"application/vnd.android.package-archive", 0, "'PK' 03 04 ??*26 'AndroidManifest.xml'"},
+		{"application/epub+zip", 30, "'mimetypeapplication/epub+zip'"},
+		{"application/gzip", 0, "1F 8B"},
+		{"application/x-bzip2", 0, "'BZh'"},
+		{"application/x-xz", 0, "FD '7zXZ' 00"},
+		{"application/x-7z-compressed", 0, "'7z' BC AF 27 1C"},
+		{"application/vnd.rar", 0, "'Rar!' 1A 07"},
+		{"application/x-tar", 257, "'ustar'"},
+		{"application/pdf", 0, "'%PDF-'"},
+
+		// Audio
+		{"audio/mpeg", 0, "'ID3'"},
+		{"audio/mpeg", 0, "FF FB"},
+		{"audio/mpeg", 0, "FF F3"},
+		{"audio/mpeg", 0, "FF F2"},
+		{"audio/aac", 0, "FF F1"},
+		{"audio/aac", 0, "FF F9"},
+		{"audio/ogg", 0, "'OggS'"},
+		{"audio/flac", 0, "'fLaC'"},
+		{"audio/wav", 0, "'RIFF' ??*4 'WAVE'"},
+		{"audio/mp4", 4, "'ftypM4A '"},
+		{"audio/amr", 0, "'#!AMR'"},
+		{"audio/midi", 0, "'MThd'"},
+
+		// Video
+		{"video/mp4", 4, "'ftyp'"},
+		{"video/3gpp", 4, "'ftyp3gp'"},
+		{"video/quicktime", 4, "'ftypqt  '"},
+		{"video/x-matroska", 0, "1A 45 DF A3"},
+		{"video/x-msvideo", 0, "'RIFF' ??*4 'AVI '"},
+		{"video/x-flv", 0, "'FLV'"},
+		{"video/mpeg", 0, "00 00 01 BA"},
+		{"video/mpeg", 0, "00 00 01 B3"},
+	};
+
+	private static ContentSniffer defaultSniffer;
+
+	// Compiled trie, one slot per node
+	private final int[] edgeStart;
+	private final int[] edgeCount;
+	private final int[] wildcard;
+	private final int[] wildcardSkip;
+	private final int[] result;
+	private final byte[] edgeBytes;
+	private final int[] edgeTargets;
+	private final String[] types;	// by signature
+	private final int headerLength;
+
+	private ContentSniffer(Builder builder)
+	{
+		List<Builder.Node> nodes = new ArrayList<Builder.Node>();
+		int edges = builder.root.collect(nodes);
+
+		edgeStart = new int[nodes.size()];
+		edgeCount = new int[nodes.size()];
+		wildcard = new int[nodes.size()];
+		wildcardSkip = new int[nodes.size()];
+		result = new int[nodes.size()];
+		edgeBytes = new byte[edges];
+		edgeTargets = new int[edges];
+		types = builder.types.toArray(new String[builder.types.size()]);
+		headerLength = builder.headerLength;
+
+		int edge = 0;
+		for(int i = 0; i < nodes.size(); i++)
+		{
+			Builder.Node node = nodes.get(i);
+			edgeStart[i] = edge;
+			wildcard[i] = (node.wildcard != null) ? node.wildcard.id : -1;
+			result[i] = node.result;
+
+			// Children are visited in unsigned byte order, so edges come out sorted
+			for(int b = 0; b < 256; b++)
+				if(node.children[b] != null)
+				{
+					edgeBytes[edge] = (byte) b;
+					edgeTargets[edge++] = node.children[b].id;
+				}
+
+			edgeCount[i] = edge - edgeStart[i];
+		}
+
+		// Jump over runs of wildcard-only nodes (offsets, ZIP header fields) in one step
+		for(int i = 0; i < nodes.size(); i++)
+		{
+			if(wildcard[i] < 0)
+				continue;
+
+			int target = wildcard[i];
+			int skip = 1;
+			while(edgeCount[target] == 0 && result[target] < 0 && wildcard[target] >= 0)
+			{
+				target = wildcard[target];
+				skip++;
+			}
+
+			wildcard[i] = target;
+			wildcardSkip[i] = skip;
+		}
+	}
+
+
+	/*
+	* Returns the shared sniffer that knows the built-in
+	* font, image, archive, audio and video signatures.
+	*
+	*@method  ContentSniffer.getDefault()
+	*@return  ContentSniffer
+	*/
+	public static final synchronized ContentSniffer getDefault()
+	{
+		if(defaultSniffer == null)
+			defaultSniffer = new Builder().addDefaults().build();
+
+		return defaultSniffer;
+	}
+
+	// Number of leading bytes needed to check every signature
+	public int getHeaderLength()
+	{
+		return headerLength;
+	}
+
+
+	/*
+	* Identifies content from it's leading bytes. Only
+	* getHeaderLength() bytes are ever read.
+	*
+	*@method  sniffer.sniff(file)
+	*@param   file  -  The file to be identified
+	*
+	*@method  sniffer.sniff(is)
+	*@param   is  -  Stream positioned at the start of the content (it is not closed)
+	*
+	*@method  sniffer.sniff(buffer)
+	*@param   buffer  -  Content starting at the buffer's position (the position is not changed)
+	*
+	*@method  sniffer.sniff(header, offset, length)
+	*@param   header  -  Array holding the leading bytes
+	*@param   offset  -  Start of the content in the array
+	*@param   length  -  Number of valid bytes
+	*
+	*@return  string  -  The MIME type, or null if no signature matches
+	*/
+	public String sniff(File file)
+	{
+		byte[] header = new byte[headerLength];
+		RandomAccessFile raf = null;
+
+		try {
+			raf = new RandomAccessFile(file, "r");
+			int len = raf.read(header, 0, headerLength);
+			return sniff(header, 0, Math.max(len, 0));
+		} catch(IOException e) {
+			return null;
+		} finally {
+			try {
+				if(raf != null)
+					raf.close();
+			} catch(IOException e) {}
+		}
+	}
+
+	public String sniff(InputStream is)
+	{
+		byte[] header = new byte[headerLength];
+		int len = 0;
+
+		try {
+			int n;
+			while(len < headerLength && (n = is.read(header, len, headerLength - len)) > 0)
+				len += n;
+		} catch(IOException e) {
+			return null;
+		}
+
+		return sniff(header, 0, len);
+	}
+
+	public String sniff(ByteBuffer buffer)
+	{
+		int len = Math.min(buffer.remaining(), headerLength);
+		int pos = buffer.position();
+		byte[] header = new byte[len];
+
+		for(int i = 0; i < len; i++)
+			header[i] = buffer.get(pos + i);
+
+		return sniff(header, 0, len);
+	}
+
+	public String sniff(byte[] header, int offset, int length)
+	{
+		long best = match(0, header, offset, Math.min(length, headerLength), 0);
+		return (best < 0) ? null : types[Integer.MAX_VALUE - (int) best];
+	}
+
+	// Deepest terminal reachable from node, packed so that longer and then earlier signatures compare greater, or -1
+	private long match(int node, byte[] header, int offset, int length, int depth)
+	{
+		long best = (result[node] >= 0) ? ((long) depth << 32) | (Integer.MAX_VALUE - result[node]) : -1;
+		if(depth >= length)
+			return best;
+
+		int child = find(node, header[offset + depth]);
+		if(child >= 0)
+			best = Math.max(best, match(child, header, offset, length, depth + 1));
+
+		if(wildcard[node] >= 0 && depth + wildcardSkip[node] <= length)
+			best = Math.max(best, match(wildcard[node], header, offset, length, depth + wildcardSkip[node]));
+
+		return best;
+	}
+
+	private int find(int node, byte b)
+	{
+		int lo = edgeStart[node];
+		int hi = lo + edgeCount[node] - 1;
+		int key = b & 0xFF;
+
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int value = edgeBytes[mid] & 0xFF;
+
+			if(value < key)
+				lo = mid + 1;
+			else if(value > key)
+				hi = mid - 1;
+			else
+				return edgeTargets[mid];
+		}
+
+		return -1;
+	}
+
+	/*
+	* Collects signatures and compiles them into a
+	* ContentSniffer
+	*/
+	public static final class Builder
+	{
+		private final Node root = new Node();
+		private final List<String> types = new ArrayList<String>();	// by signature
+		private int headerLength;
+
+
+		/*
+		* Registers a signature. When two signatures
+		* of the same length match, the one added first
+		* wins.
+		*
+		*@method  builder.add(type, offset, signature)
+		*@param   type  -  The MIME type reported on a match
+		*@param   offset  -  Position of the signature in the content
+		*@param   signature  -  Hex bytes, ?? wildcards and 'quoted' ASCII
+		*@return  ContentSniffer.Builder
+		*/
+		public Builder add(String type, int offset, String signature)
+		{
+			if(offset < 0)
+				throw new IllegalArgumentException("Negative offset " + offset);
+
+			int[] pattern = parse(signature);
+			Node node = root;
+			for(int i = 0; i < offset; i++)
+				node = node.next(WILDCARD);
+			for(int b : pattern)
+				node = node.next(b);
+
+			if(node.result < 0)
+			{
+				node.result = types.size();
+				types.add(type);
+			}
+
+			headerLength = Math.max(headerLength, offset + pattern.length);
+			return this;
+		}
+
+		// Adds the built-in signatures
+		public Builder addDefaults()
+		{
+			for(Object[] row : SIGNATURES)
+				add((String) row[0], (Integer) row[1], (String) row[2]);
+
+			return this;
+		}
+
+		public ContentSniffer build()
+		{
+			return new ContentSniffer(this);
+		}
+
+		private static int[] parse(String signature)
+		{
+			List<Integer> bytes = new ArrayList<Integer>();
+			int i = 0;
+
+			while(i < signature.length())
+			{
+				char c = signature.charAt(i);
+
+				if(c == ' ')
+					i++;
+				else if(c == '\'')
+				{
+					int end = signature.indexOf('\'', i + 1);
+					if(end < 0)
+						throw new IllegalArgumentException("Unterminated ASCII in signature: " + signature);
+
+					for(int j = i + 1; j < end; j++)
+						bytes.add(signature.charAt(j) & 0xFF);
+					i = end + 1;
+				}
+				else if(signature.startsWith("??", i))
+				{
+					int count = 1;
+					i += 2;
+
+					if(i < signature.length() && signature.charAt(i) == '*')
+					{
+						int end = signature.indexOf(' ', i);
+						if(end < 0)
+							end = signature.length();
+
+						count = Integer.parseInt(signature.substring(i + 1, end));
+						i = end;
+					}
+
+					for(int j = 0; j < count; j++)
+						bytes.add(WILDCARD);
+				}
+				else if(i + 2 <= signature.length())
+				{
+					bytes.add(Integer.parseInt(signature.substring(i, i + 2), 16));
+					i += 2;
+				}
+				else
+					throw new IllegalArgumentException("Malformed signature: " + signature);
+			}
+
+			if(bytes.isEmpty())
+				throw new IllegalArgumentException("Empty signature");
+
+			int[] pattern = new int[bytes.size()];
+			for(int j = 0; j < pattern.length; j++)
+				pattern[j] = bytes.get(j);
+
+			return pattern;
+		}
+
+		private static final class Node
+		{
+			final Node[] children = new Node[256];
+			Node wildcard;
+			int result = -1;
+			int id;
+
+			Node next(int b)
+			{
+				if(b == WILDCARD)
+					return (wildcard != null) ? wildcard : (wildcard = new Node());
+
+				return (children[b] != null) ? children[b] : (children[b] = new Node());
+			}
+
+			// Numbers the nodes depth-first and returns the edge count
+			int collect(List<Node> nodes)
+			{
+				id = nodes.size();
+				nodes.add(this);
+				int edges = 0;
+
+				for(Node child : children)
+					if(child != null)
+						edges += 1 + child.collect(nodes);
+
+				if(wildcard != null)
+					edges += wildcard.collect(nodes);
+
+				return edges;
+			}
+		}
+	}
+}
@@ -0,0 +1,634 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* An immutable, in-memory picture of one or more folder
+* trees, taken once (in parallel) and then queried as
+* often as needed without touching the disk: largest
+* files, total size per extension, files modified since
+* a given time.
+*
+* Entries are stored column-wise in primitive arrays
+* (size, mtime, parent, name) with every folder's
+* children next to each other, and names and extensions
+* are interned into shared string tables, so a tree of
+* a million entries fits in a few tens of MB.
+*
+* refresh() takes a new snapshot that only re-lists the
+* folders whose mtime changed and copies the rest from
+* this one. A folder's mtime changes when entries are
+* added, removed or renamed in it, but not when a file
+* in it is rewritten in place; use scan() again when
+* those edits matter.
+*
+* Usage:
+*   DirectorySnapshot snapshot = DirectorySnapshot.scan(new File("/sdcard"));
+*   List<File> largest = snapshot.getLargestFiles(20);
+*   snapshot = snapshot.refresh();
+*
+*@package  com.cdph.util.io
+*@class  DirectorySnapshot.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class DirectorySnapshot
+{
+	// Mtimes this close to the scan may hide a later change in the same tick
+	private static final long RACY_MILLIS = 2000;
+
+	private final File[] roots;
+	private final long scanTime;
+	private final int listed;
+
+	// One slot per entry; roots come first and each folder's children are contiguous
+	private final int count;
+	private final int[] parent;
+	private final int[] name;
+	private final int[] extension;
+	private final int[] firstChild;
+	private final int[] childCount;
+	private final long[] size;
+	private final long[] lastModified;
+
+	private final String[] names;
+	private final String[] extensions;
+
+	private DirectorySnapshot(File[] roots, long scanTime, int listed, Listing[] listings)
+	{
+		this.roots = roots;
+		this.scanTime = scanTime;
+		this.listed = listed;
+
+		int total = listings.length;
+		for(Listing listing : listings)
+			total += listing.countDescendants();
+
+		count = total;
+		parent = new int[total];
+		name = new int[total];
+		extension = new int[total];
+		firstChild = new int[total];
+		childCount = new int[total];
+		size = new long[total];
+		lastModified = new long[total];
+
+		Map<String, Integer> nameIds = new HashMap<String, Integer>();
+		Map<String, Integer> extensionIds = new HashMap<String, Integer>();
+		List<String> nameTable = new ArrayList<String>();
+		List<String> extensionTable = new ArrayList<String>();
+
+		// Breadth first, so every folder's children get one contiguous block
+		ArrayDeque<Listing> queue = new ArrayDeque<Listing>();
+		ArrayDeque<Integer> nodes = new ArrayDeque<Integer>();
+		int next = 0;
+
+		for(Listing listing : listings)
+		{
+			int node = next++;
+			parent[node] = -1;
+			name[node] = intern(listing.dir.getAbsolutePath(), nameIds, nameTable);
+			extension[node] = -1;
+			size[node] = -1;
+			lastModified[node] = listing.mtime;
+			queue.add(listing);
+			nodes.add(node);
+		}
+
+		while(!queue.isEmpty())
+		{
+			Listing listing = queue.poll();
+			int dir = nodes.poll();
+			int children = listing.names == null ? 0 : listing.names.length;
+
+			firstChild[dir] = next;
+			childCount[dir] = children;
+
+			for(int i = 0; i < children; i++)
+			{
+				int node = next++;
+				String child = listing.names[i];
+				parent[node] = dir;
+				name[node] = intern(child, nameIds, nameTable);
+
+				Listing sub = listing.subdirs[i];
+				if(sub != null)
+				{
+					extension[node] = -1;
+					size[node] = -1;
+					lastModified[node] = sub.mtime;
+					queue.add(sub);
+					nodes.add(node);
+				}
+				else
+				{
+					String ext = extensionOf(child);
+					extension[node] = ext == null ? -1 : intern(ext, extensionIds, extensionTable);
+					size[node] = listing.sizes[i];
+					lastModified[node] = listing.mtimes[i];
+					childCount[node] = 0;
+				}
+			}
+		}
+
+		names = nameTable.toArray(new String[nameTable.size()]);
+		extensions = extensionTable.toArray(new String[extensionTable.size()]);
+	}
+
+
+	/*
+	* Scans the given folders (recursively) in parallel
+	* and returns a snapshot of everything in them.
+	* Roots that are not folders are left out.
+	*
+	*@method  DirectorySnapshot.scan(roots)
+	*@param   roots  -  The folders to scan
+	*
+	*@method  DirectorySnapshot.scan(threads, roots)
+	*@param   threads  -  Number of worker threads
+	*@param   roots  -  The folders to scan
+	*
+	*@return  DirectorySnapshot  -  The snapshot
+	*/
+	public static final DirectorySnapshot scan(File... roots) throws InterruptedException
+	{
+		return scan(defaultThreads(), roots);
+	}
+
+	public static final DirectorySnapshot scan(int threads, File... roots) throws InterruptedException
+	{
+		return new Scanner(threads, null).run(roots.clone());
+	}
+
+
+	/*
+	* Takes a new snapshot of the same roots, re-listing
+	* only the folders that changed since this one.
+	*
+	*@method  snapshot.refresh()
+	*
+	*@method  snapshot.refresh(threads)
+	*@param   threads  -  Number of worker threads
+	*
+	*@return  DirectorySnapshot  -  The new snapshot; this one is unchanged
+	*/
+	public DirectorySnapshot refresh() throws InterruptedException
+	{
+		return refresh(defaultThreads());
+	}
+
+	public DirectorySnapshot refresh(int threads) throws InterruptedException
+	{
+		return new Scanner(threads, this).run(roots);
+	}
+
+	// When the snapshot was taken, in milliseconds since the epoch
+	public long getScanTime()
+	{
+		return scanTime;
+	}
+
+	// Folders read from disk while taking this snapshot; the rest were copied from the previous one
+	public int getListedCount()
+	{
+		return listed;
+	}
+
+	public int getFileCount()
+	{
+		int files = 0;
+		for(int i = 0; i < count; i++)
+			if(size[i] >= 0)
+				files++;
+
+		return files;
+	}
+
+	// Includes the roots
+	public int getDirectoryCount()
+	{
+		return count - getFileCount();
+	}
+
+	public long getTotalSize()
+	{
+		long total = 0;
+		for(int i = 0; i < count; i++)
+			if(size[i] > 0)
+				total += size[i];
+
+		return total;
+	}
+
+
+	/*
+	* Gets the largest files in the snapshot
+	*
+	*@method  snapshot.getLargestFiles(limit)
+	*@param   limit  -  How many files to return at most
+	*@return  List<File>  -  The files, largest first
+	*/
+	public List<File> getLargestFiles(int limit)
+	{
+		if(limit <= 0)
+			return new ArrayList<File>();
+
+		// Min-heap of the best so far; only a better file gets boxed
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(limit, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return (size[a] < size[b]) ? -1 : ((size[a] == size[b]) ? 0 : 1);
+			}
+		});
+
+		for(int i = 0; i < count; i++)
+		{
+			if(size[i] < 0)
+				continue;
+
+			if(heap.size() < limit)
+				heap.add(i);
+			else if(size[i] > size[heap.peek()])
+			{
+				heap.poll();
+				heap.add(i);
+			}
+		}
+
+		File[] largest = new File[heap.size()];
+		for(int i = largest.length - 1; i >= 0; i--)
+			largest[i] = getFile(heap.poll());
+
+		List<File> files = new ArrayList<File>(largest.length);
+		Collections.addAll(files, largest);
+		return files;
+	}
+
+
+	/*
+	* Sums file sizes per extension. Extensions are
+	* lower-cased and keep their dot (like
+	* FileUtils.getFileExtension); files without one are
+	* counted under "".
+	*
+	*@method  snapshot.getSizeByExtension()
+	*@return  Map<String, Long>  -  Bytes per extension, largest first
+	*/
+	public Map<String, Long> getSizeByExtension()
+	{
+		// Slot 0 is for files without an extension
+		long[] totals = new long[extensions.length + 1];
+		int[] files = new int[totals.length];
+		for(int i = 0; i < count; i++)
+			if(size[i] >= 0)
+			{
+				totals[extension[i] + 1] += size[i];
+				files[extension[i] + 1]++;
+			}
+
+		List<Integer> order = new ArrayList<Integer>(totals.length);
+		for(int i = 0; i < totals.length; i++)
+			if(files[i] > 0)
+				order.add(i);
+
+		final long[] sums = totals;
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return (sums[b] < sums[a]) ? -1 : ((sums[b] == sums[a]) ? 0 : 1);
+			}
+		});
+
+		Map<String, Long> bySize = new LinkedHashMap<String, Long>();
+		for(int i : order)
+			bySize.put(i == 0 ? "" : extensions[i - 1], totals[i]);
+
+		return bySize;
+	}
+
+
+	/*
+	* Gets the files last modified at or after the given
+	* time
+	*
+	*@method  snapshot.getModifiedSince(time)
+	*@param   time  -  Milliseconds since the epoch
+	*@return  List<File>  -  The files, in no particular order
+	*/
+	public List<File> getModifiedSince(long time)
+	{
+		List<File> files = new ArrayList<File>();
+		for(int i = 0; i < count; i++)
+			if(size[i] >= 0 && lastModified[i] >= time)
+				files.add(getFile(i));
+
+		return files;
+	}
+
+	// Rebuilds an entry's path from the parent links
+	private File getFile(int node)
+	{
+		int depth = 0;
+		for(int n = node; n >= 0; n = parent[n])
+			depth++;
+
+		int[] chain = new int[depth];
+		for(int n = node; n >= 0; n = parent[n])
+			chain[--depth] = n;
+
+		StringBuilder path = new StringBuilder(names[name[chain[0]]]);
+		for(int i = 1; i < chain.length; i++)
+		{
+			if(path.charAt(path.length() - 1) != File.separatorChar)
+				path.append(File.separatorChar);
+			path.append(names[name[chain[i]]]);
+		}
+
+		return new File(path.toString());
+	}
+
+	// The root entry for the given folder, or -1
+	private int rootOf(File dir)
+	{
+		String path = dir.getAbsolutePath();
+		for(int i = 0; i < count && parent[i] < 0; i++)
+			if(names[name[i]].equals(path))
+				return i;
+
+		return -1;
+	}
+
+	// Maps the names in a folder to their entries
+	private Map<String, Integer> childrenOf(int dir)
+	{
+		Map<String, Integer> children = new HashMap<String, Integer>(childCount[dir] * 2);
+		for(int i = firstChild[dir], end = i + childCount[dir]; i < end; i++)
+			children.put(names[name[i]], i);
+
+		return children;
+	}
+
+	private static String extensionOf(String name)
+	{
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? null : name.substring(dot).toLowerCase(Locale.US);
+	}
+
+	private static int intern(String value, Map<String, Integer> ids, List<String> table)
+	{
+		Integer id = ids.get(value);
+		if(id == null)
+		{
+			id = table.size();
+			ids.put(value, id);
+			table.add(value);
+		}
+
+		return id;
+	}
+
+	private static int defaultThreads()
+	{
+		// Listing is mostly waiting on storage, so use more threads than cores
+		return Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() * 2));
+	}
+
+	/*
+	* Walks the roots on a pool of worker threads into a
+	* tree of listings, reusing the previous snapshot's
+	* entries for folders that haven't changed
+	*/
+	private static final class Scanner
+	{
+		private final ExecutorService pool;
+		private final DirectorySnapshot previous;
+		private final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicInteger listed = new AtomicInteger();
+
+		Scanner(int threads, DirectorySnapshot previous)
+		{
+			if(threads <= 0)
+				throw new IllegalArgumentException("Thread count must be positive: " + threads);
+
+			this.previous = previous;
+			this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "DirectorySnapshot-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		DirectorySnapshot run(File[] roots) throws InterruptedException
+		{
+			long scanTime = System.currentTimeMillis();
+			List<Listing> listings = new ArrayList<Listing>();
+
+			try {
+				pending.incrementAndGet();
+				for(File root : roots)
+					if(root.isDirectory())
+					{
+						Listing listing = new Listing(root);
+						listings.add(listing);
+						submit(listing, previous == null ? -1 : previous.rootOf(root));
+					}
+				finish();
+
+				synchronized(this)
+				{
+					while(pending.get() != 0)
+						wait();
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+
+			return new DirectorySnapshot(roots, scanTime, listed.get(), listings.toArray(new Listing[listings.size()]));
+		}
+
+		private void submit(final Listing listing, final int old)
+		{
+			pending.incrementAndGet();
+			pool.execute(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						visit(listing, old);
+					} finally {
+						finish();
+					}
+				}
+			});
+		}
+
+		private void visit(Listing listing, int old)
+		{
+			listing.mtime = listing.dir.lastModified();
+
+			// Guards against symlink loops and overlapping roots
+			try {
+				if(!visited.add(listing.dir.getCanonicalPath()))
+					return;
+			} catch(IOException e) {
+				return;
+			}
+
+			if(old >= 0 && previous.lastModified[old] == listing.mtime && listing.mtime < previous.scanTime - RACY_MILLIS)
+				reuse(listing, old);
+			else
+				list(listing, old);
+		}
+
+		// Copies an unchanged folder's entries from the previous snapshot
+		private void reuse(Listing listing, int old)
+		{
+			int first = previous.firstChild[old];
+			int children = previous.childCount[old];
+			listing.allocate(children);
+
+			for(int i = 0; i < children; i++)
+			{
+				int node = first + i;
+				listing.names[i] = previous.names[previous.name[node]];
+
+				if(previous.size[node] < 0)
+				{
+					Listing sub = new Listing(new File(listing.dir, listing.names[i]));
+					listing.subdirs[i] = sub;
+					submit(sub, node);
+				}
+				else
+				{
+					listing.sizes[i] = previous.size[node];
+					listing.mtimes[i] = previous.lastModified[node];
+				}
+			}
+		}
+
+		private void list(Listing listing, int old)
+		{
+			listed.incrementAndGet();
+
+			File[] files = listing.dir.listFiles();
+			if(files == null)
+				return;
+
+			// Sub-folders that were seen before can still be reused below this one
+			Map<String, Integer> known = old >= 0 ? previous.childrenOf(old) : null;
+			listing.allocate(files.length);
+
+			for(int i = 0; i < files.length; i++)
+			{
+				File child = files[i];
+				listing.names[i] = child.getName();
+
+				if(child.isDirectory())
+				{
+					Integer before = known == null ? null : known.get(listing.names[i]);
+					boolean wasFolder = before != null && previous.size[before] < 0;
+
+					Listing sub = new Listing(child);
+					listing.subdirs[i] = sub;
+					submit(sub, wasFolder ? before : -1);
+				}
+				else
+				{
+					listing.sizes[i] = child.length();
+					listing.mtimes[i] = child.lastModified();
+				}
+			}
+		}
+
+		private void finish()
+		{
+			if(pending.decrementAndGet() == 0)
+				synchronized(this)
+				{
+					notifyAll();
+				}
+		}
+	}
+
+	/*
+	* One folder's entries, as gathered by a worker
+	*/
+	private static final class Listing
+	{
+		final File dir;
+		long mtime;
+
+		String[] names;
+		long[] sizes;
+		long[] mtimes;
+		Listing[] subdirs;
+
+		Listing(File dir)
+		{
+			this.dir = dir;
+		}
+
+		void allocate(int children)
+		{
+			names = new String[children];
+			sizes = new long[children];
+			mtimes = new long[children];
+			subdirs = new Listing[children];
+		}
+
+		int countDescendants()
+		{
+			if(names == null)
+				return 0;
+
+			int total = names.length;
+			for(Listing sub : subdirs)
+				if(sub != null)
+					total += sub.countDescendants();
+
+			return total;
+		}
+	}
+}
@@ -0,0 +1,507 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* Finds files with identical contents under one or more
+* folders, reading as little of each file as possible:
+*
+*   1. Files are grouped by size; a file with a unique
+*      size can't have a duplicate and is never opened.
+*   2. What's left is split by an XXH64 of the first and
+*      last 4 KB, which separates almost every look-alike.
+*   3. Only the survivors are read in full and compared
+*      by SHA-256.
+*
+* The walk and both hashing stages run on a pool of
+* worker threads. Empty files are ignored, and a file
+* reached through overlapping roots or symlinks is only
+* counted once.
+*
+* Usage:
+*   DuplicateFinder.Result result = DuplicateFinder.find(new File("/sdcard"));
+*   for(List<File> group : result.getGroups())
+*       ...
+*
+*@package  com.cdph.util.io
+*@class  DuplicateFinder.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class DuplicateFinder
+{
+	private static final int BLOCK = 4096;
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	// Walk state
+	private final List<Candidate> files = Collections.synchronizedList(new ArrayList<Candidate>());
+	private final Set<String> visited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private DuplicateFinder(int threads)
+	{
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "DuplicateFinder-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
+	/*
+	* Searches the given folders (recursively) for files
+	* with identical contents. Blocks until done.
+	*
+	*@method  DuplicateFinder.find(roots)
+	*@param   roots  -  The folders (or single files) to search
+	*
+	*@method  DuplicateFinder.find(threads, roots)
+	*@param   threads  -  Number of worker threads
+	*@param   roots  -  The folders (or single files) to search
+	*
+	*@return  Result  -  The duplicate groups, largest waste first
+	*/
+	public static final Result find(File... roots) throws InterruptedException
+	{
+		// Hashing is mostly waiting on storage, so use more threads than cores
+		int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() * 2));
+		return find(threads, roots);
+	}
+
+	public static final Result find(int threads, File... roots) throws InterruptedException
+	{
+		if(threads <= 0)
+			throw new IllegalArgumentException("Thread count must be positive: " + threads);
+
+		DuplicateFinder finder = new DuplicateFinder(threads);
+		try {
+			return finder.run(roots);
+		} finally {
+			finder.pool.shutdownNow();
+		}
+	}
+
+	private Result run(File[] roots) throws InterruptedException
+	{
+		walk(roots);
+		int scanned = files.size();
+
+		List<List<Candidate>> groups = bySize(files);
+		groups = distinct(groups);
+		groups = split(groups, false);
+		groups = split(groups, true);
+
+		// Largest waste first
+		Collections.sort(groups, new Comparator<List<Candidate>>() {
+			@Override
+			public int compare(List<Candidate> a, List<Candidate> b)
+			{
+				long wasteA = a.get(0).size * (a.size() - 1);
+				long wasteB = b.get(0).size * (b.size() - 1);
+				return wasteA < wasteB ? 1 : (wasteA == wasteB ? 0 : -1);
+			}
+		});
+
+		List<List<File>> result = new ArrayList<List<File>>(groups.size());
+		long wasted = 0;
+		for(List<Candidate> group : groups)
+		{
+			List<File> same = new ArrayList<File>(group.size());
+			for(Candidate candidate : group)
+				same.add(candidate.file);
+
+			Collections.sort(same);
+			result.add(Collections.unmodifiableList(same));
+			wasted += group.get(0).size * (group.size() - 1);
+		}
+
+		return new Result(Collections.unmodifiableList(result), scanned, bytesRead.get(), wasted);
+	}
+
+	// Collects every non-empty file under the roots
+	private void walk(File[] roots) throws InterruptedException
+	{
+		pending.incrementAndGet();
+		for(File root : roots)
+			if(root.isDirectory())
+				submit(root);
+			else if(root.isFile() && root.length() > 0)
+				files.add(new Candidate(root, root.length()));
+		finish();
+
+		synchronized(this)
+		{
+			while(pending.get() != 0)
+				wait();
+		}
+	}
+
+	private void submit(final File dir)
+	{
+		pending.incrementAndGet();
+		pool.execute(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					visit(dir);
+				} finally {
+					finish();
+				}
+			}
+		});
+	}
+
+	private void visit(File dir)
+	{
+		// Guards against symlink loops and overlapping roots
+		try {
+			if(!visited.add(dir.getCanonicalPath()))
+				return;
+		} catch(IOException e) {
+			return;
+		}
+
+		File[] children = dir.listFiles();
+		if(children == null)
+			return;
+
+		for(File child : children)
+		{
+			if(child.isDirectory())
+				submit(child);
+			else
+			{
+				long size = child.length();
+				if(size > 0)
+					files.add(new Candidate(child, size));
+			}
+		}
+	}
+
+	private void finish()
+	{
+		if(pending.decrementAndGet() == 0)
+			synchronized(this)
+			{
+				notifyAll();
+			}
+	}
+
+	private static List<List<Candidate>> bySize(List<Candidate> files)
+	{
+		Map<Long, List<Candidate>> sizes = new HashMap<Long, List<Candidate>>();
+		for(Candidate candidate : files)
+		{
+			List<Candidate> group = sizes.get(candidate.size);
+			if(group == null)
+				sizes.put(candidate.size, group = new ArrayList<Candidate>(2));
+			group.add(candidate);
+		}
+
+		List<List<Candidate>> groups = new ArrayList<List<Candidate>>();
+		for(List<Candidate> group : sizes.values())
+			if(group.size() > 1)
+				groups.add(group);
+
+		return groups;
+	}
+
+	/*
+	* Drops repeats of the same physical file, reached
+	* through overlapping roots or symlinks. Only files
+	* that share their size with another one can be
+	* repeats, so only those are canonicalised.
+	*/
+	private List<List<Candidate>> distinct(List<List<Candidate>> groups) throws InterruptedException
+	{
+		final Candidate[] candidates = flatten(groups);
+		forEach(candidates.length, new Task() {
+			@Override
+			public void run(int index) throws Exception
+			{
+				Candidate candidate = candidates[index];
+				candidate.key = null;	// Stays null if the call below throws
+				candidate.key = candidate.file.getCanonicalPath();
+			}
+		});
+
+		List<List<Candidate>> result = new ArrayList<List<Candidate>>();
+		Set<Object> seen = new HashSet<Object>();
+		for(List<Candidate> group : groups)
+		{
+			seen.clear();
+			List<Candidate> unique = new ArrayList<Candidate>(group.size());
+			for(Candidate candidate : group)
+				if(candidate.key != null && seen.add(candidate.key))
+					unique.add(candidate);
+
+			if(unique.size() > 1)
+				result.add(unique);
+		}
+
+		return result;
+	}
+
+	// Hashes every candidate in parallel, then splits each group by the hash
+	private List<List<Candidate>> split(List<List<Candidate>> groups, final boolean full) throws InterruptedException
+	{
+		final Candidate[] candidates = flatten(groups);
+		forEach(candidates.length, new Task() {
+			@Override
+			public void run(int index) throws Exception
+			{
+				Candidate candidate = candidates[index];
+				candidate.key = null;	// Stays null if the call below throws
+				candidate.key = full ? fullHash(candidate) : partialHash(candidate);
+			}
+		});
+
+		List<List<Candidate>> result = new ArrayList<List<Candidate>>();
+		Map<Object, List<Candidate>> keys = new LinkedHashMap<Object, List<Candidate>>();
+		for(List<Candidate> group : groups)
+		{
+			keys.clear();
+			for(Candidate candidate : group)
+			{
+				// Files that couldn't be read drop out
+				if(candidate.key == null)
+					continue;
+
+				List<Candidate> same = keys.get(candidate.key);
+				if(same == null)
+					keys.put(candidate.key, same = new ArrayList<Candidate>(2));
+				same.add(candidate);
+			}
+
+			for(List<Candidate> same : keys.values())
+				if(same.size() > 1)
+					result.add(same);
+		}
+
+		return result;
+	}
+
+	private static Candidate[] flatten(List<List<Candidate>> groups)
+	{
+		List<Candidate> all = new ArrayList<Candidate>();
+		for(List<Candidate> group : groups)
+			all.addAll(group);
+
+		return all.toArray(new Candidate[all.size()]);
+	}
+
+	// XXH64 of the first and last block; the whole file if it is small
+	private Object partialHash(Candidate candidate) throws IOException
+	{
+		byte[] buffer = BufferPool.acquire(BLOCK);
+		try {
+			RandomAccessFile raf = new RandomAccessFile(candidate.file, "r");
+			try {
+				XXHash64 hash = new XXHash64();
+				long size = candidate.size;
+				long read = 0;
+
+				if(size <= BLOCK * 2)
+				{
+					int len;
+					while((len = raf.read(buffer, 0, BLOCK)) > 0)
+					{
+						hash.update(buffer, 0, len);
+						read += len;
+					}
+				}
+				else
+				{
+					raf.readFully(buffer, 0, BLOCK);
+					hash.update(buffer, 0, BLOCK);
+					raf.seek(size - BLOCK);
+					raf.readFully(buffer, 0, BLOCK);
+					hash.update(buffer, 0, BLOCK);
+					read = BLOCK * 2;
+				}
+
+				bytesRead.addAndGet(read);
+				return hash.getValue();
+			} finally {
+				raf.close();
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	private Object fullHash(Candidate candidate) throws IOException, NoSuchAlgorithmException
+	{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+		try {
+			InputStream is = new FileInputStream(candidate.file);
+			try {
+				long read = 0;
+				int len;
+				while((len = is.read(buffer)) > 0)
+				{
+					digest.update(buffer, 0, len);
+					read += len;
+				}
+
+				bytesRead.addAndGet(read);
+
+				// Changed while we were looking at it
+				if(read != candidate.size)
+					return null;
+			} finally {
+				is.close();
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+
+		return ByteBuffer.wrap(digest.digest());
+	}
+
+	// Runs task.run(i) for every i in [0, count) across the pool
+	private void forEach(final int count, final Task task) throws InterruptedException
+	{
+		if(count == 0)
+			return;
+
+		final AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(threads, count);
+		final CountDownLatch latch = new CountDownLatch(workers);
+
+		for(int i = 0; i < workers; i++)
+			pool.execute(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						int index;
+						while((index = next.getAndIncrement()) < count)
+						{
+							try {
+								task.run(index);
+							} catch(Exception e) {
+								// Unreadable file; it's key stays null and it drops out
+							}
+						}
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+
+		latch.await();
+	}
+
+	private interface Task
+	{
+		void run(int index) throws Exception;
+	}
+
+	private static final class Candidate
+	{
+		final File file;
+		final long size;
+		Object key;
+
+		Candidate(File file, long size)
+		{
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	/*
+	* What a search found
+	*/
+	public static final class Result
+	{
+		private final List<List<File>> groups;
+		private final int scanned;
+		private final long bytesRead;
+		private final long wasted;
+
+		Result(List<List<File>> groups, int scanned, long bytesRead, long wasted)
+		{
+			this.groups = groups;
+			this.scanned = scanned;
+			this.bytesRead = bytesRead;
+			this.wasted = wasted;
+		}
+
+		// Each group holds two or more files with identical contents
+		public List<List<File>> getGroups()
+		{
+			return groups;
+		}
+
+		// Number of non-empty files looked at
+		public int getScannedCount()
+		{
+			return scanned;
+		}
+
+		// Bytes actually read while hashing
+		public long getBytesRead()
+		{
+			return bytesRead;
+		}
+
+		// Bytes that would be freed by keeping one file per group
+		public long getWastedBytes()
+		{
+			return wasted;
+		}
+	}
+}
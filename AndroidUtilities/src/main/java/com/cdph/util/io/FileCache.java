@@ -0,0 +1,304 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* FileCache
+*
+* The optional in-memory cache behind FileUtils.readFile
+* and FileUtils.toBytes (see FileUtils.enableCache).
+*
+* Contents are kept per path and checked against the
+* file's size and mtime on every read, so edits made
+* outside the app are picked up. Writes made through
+* FileUtils drop the affected entries right away.
+*
+* The cache is split into independently locked LRU
+* segments so readers on different threads rarely
+* contend, and the total size of the cached contents
+* never exceeds the configured number of bytes.
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class FileCache
+{
+	private static final int MAX_SEGMENTS = 16;
+	private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+
+	private final Segment[] segments;
+	private final long maxBytes;
+	private final long segmentBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	FileCache(long maxBytes)
+	{
+		if(maxBytes <= 0)
+			throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+
+		// Fewer, larger segments for small caches, so a single file can still fit
+		int count = 1;
+		while(count < MAX_SEGMENTS && maxBytes / (count * 2) >= MIN_SEGMENT_BYTES)
+			count *= 2;
+
+		this.maxBytes = maxBytes;
+		this.segmentBytes = maxBytes / count;
+		this.segments = new Segment[count];
+
+		for(int i = 0; i < count; i++)
+			segments[i] = new Segment();
+	}
+
+	/*
+	* Returns the cached contents of the file, reading it
+	* if it is missing or stale. The array is shared by
+	* every reader and must not be modified.
+	*/
+	byte[] get(File file) throws IOException
+	{
+		String path = file.getAbsolutePath();
+		long size = file.length();
+		long mtime = file.lastModified();
+		Segment segment = segmentOf(path);
+		long generation;
+
+		synchronized(segment)
+		{
+			Entry entry = segment.get(path);
+			if(entry != null)
+			{
+				if(entry.data.length == size && entry.mtime == mtime)
+				{
+					hits.incrementAndGet();
+					return entry.data;
+				}
+
+				segment.remove(path);
+				segment.bytes -= entry.data.length;
+				invalidations.incrementAndGet();
+			}
+
+			generation = segment.generation;
+		}
+
+		misses.incrementAndGet();
+		byte[] data;
+		InputStream is = new FileInputStream(file);
+		try {
+			data = FileUtils.readAll(is, size);
+		} finally {
+			is.close();
+		}
+
+		// Only cache what matches the stat taken before reading
+		if(data.length == size && file.lastModified() == mtime && size <= segmentBytes)
+			put(segment, path, new Entry(data, mtime), generation);
+
+		return data;
+	}
+
+
+	/*
+	* Drops the cached contents of a file, or of every
+	* file under a folder.
+	*
+	*@method  cache.invalidate(file)
+	*@param   file  -  The file/folder that changed
+	*/
+	public void invalidate(File file)
+	{
+		String path = file.getAbsolutePath();
+		Segment own = segmentOf(path);
+
+		synchronized(own)
+		{
+			remove(own, path);
+		}
+
+		// Anything below the path, in case it is (or was) a folder
+		String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+		for(Segment segment : segments)
+			synchronized(segment)
+			{
+				segment.generation++;
+				if(segment.isEmpty())
+					continue;
+
+				Iterator<Map.Entry<String, Entry>> it = segment.entrySet().iterator();
+				while(it.hasNext())
+				{
+					Map.Entry<String, Entry> e = it.next();
+					if(e.getKey().startsWith(prefix))
+					{
+						it.remove();
+						segment.bytes -= e.getValue().data.length;
+						invalidations.incrementAndGet();
+					}
+				}
+			}
+	}
+
+	// Drops a single file's entry without scanning for children
+	void invalidateFile(File file)
+	{
+		String path = file.getAbsolutePath();
+		Segment segment = segmentOf(path);
+
+		synchronized(segment)
+		{
+			remove(segment, path);
+		}
+	}
+
+	public void clear()
+	{
+		for(Segment segment : segments)
+			synchronized(segment)
+			{
+				segment.clear();
+				segment.bytes = 0;
+				segment.generation++;
+			}
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	// Entries dropped to make room for newer ones
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	// Entries dropped because the file changed
+	public long getInvalidationCount()
+	{
+		return invalidations.get();
+	}
+
+	// Total bytes currently cached
+	public long getSize()
+	{
+		long bytes = 0;
+		for(Segment segment : segments)
+			synchronized(segment)
+			{
+				bytes += segment.bytes;
+			}
+
+		return bytes;
+	}
+
+	public long getMaxSize()
+	{
+		return maxBytes;
+	}
+
+	// Skipped if the segment was invalidated since generation was read, so a read racing an invalidation isn't cached
+	private void put(Segment segment, String path, Entry entry, long generation)
+	{
+		synchronized(segment)
+		{
+			if(segment.generation != generation)
+				return;
+
+			Entry old = segment.put(path, entry);
+			if(old != null)
+				segment.bytes -= old.data.length;
+			segment.bytes += entry.data.length;
+
+			// Least recently used first
+			Iterator<Entry> it = segment.values().iterator();
+			while(segment.bytes > segmentBytes && it.hasNext())
+			{
+				Entry eldest = it.next();
+				if(eldest == entry)
+					continue;
+
+				it.remove();
+				segment.bytes -= eldest.data.length;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(Segment segment, String path)
+	{
+		segment.generation++;
+		Entry entry = segment.remove(path);
+		if(entry != null)
+		{
+			segment.bytes -= entry.data.length;
+			invalidations.incrementAndGet();
+		}
+	}
+
+	private Segment segmentOf(String path)
+	{
+		int h = path.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+
+	private static final class Segment extends LinkedHashMap<String, Entry>
+	{
+		private static final long serialVersionUID = 1L;
+
+		long bytes;
+		// Bumped by every invalidation, whether or not an entry was dropped
+		long generation;
+
+		Segment()
+		{
+			super(16, 0.75f, true);
+		}
+	}
+
+	private static final class Entry
+	{
+		final byte[] data;
+		final long mtime;
+
+		Entry(byte[] data, long mtime)
+		{
+			this.data = data;
+			this.mtime = mtime;
+		}
+	}
+}
@@ -30,20 +30,63 @@ import android.util.Log;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
 
 public final class FileUtils
 {
 	public static final String TAG = FileUtils.class.getSimpleName();
 	public static boolean LOG_ERRORS = false;
+
+	private static final int COPY_BLOCK = 64 * 1024;
+	private static final long CHECKPOINT_INTERVAL = 16 * 1024 * 1024;
+	private static final int CHECKPOINT_MAGIC = 0x434B5054;	// 'CKPT'
+	private static final int CHECKPOINT_LENGTH = 44;
+
+	private static volatile FileCache cache;
+	
+	
+	/*
+	* Turns on an in-memory cache for readFile(file) and
+	* toBytes(file). Cached contents are checked against
+	* the file's size and mtime on every read, and writes
+	* made through FileUtils invalidate them right away.
+	* Calling it again replaces the cache with an empty one.
+	*
+	*@method  FileUtils.enableCache(maxBytes)
+	*@param   maxBytes  -  Upper bound on the total size of the cached contents
+	*@return  FileCache  -  The new cache (for stats and manual invalidation)
+	*/
+	public static final FileCache enableCache(long maxBytes)
+	{
+		FileCache created = new FileCache(maxBytes);
+		cache = created;
+		return created;
+	}
+
+	public static final void disableCache()
+	{
+		cache = null;
+	}
+
+	// The active cache, or null if caching is off
+	public static final FileCache getCache()
+	{
+		return cache;
+	}
 	
 	
 	/*
-	* Converts file into an array of bytes
+	* Converts file into an array of bytes. Files are
+	* served from the cache when it is enabled.
 	*
 	*@method  FileUtils.toBytes(file)
 	*@param	  file  -  The file to be converted
@@ -58,17 +101,17 @@ public final class FileUtils
 	*/
 	public static final byte[] toBytes(File file)
 	{
+		long start = IoMetrics.start();
 		byte[] data = null;
 		
 		try {
-			InputStream is = new FileInputStream(file);
-			data = new byte[is.available()];
-			is.read(data);
-			is.close();
+			data = read(file, true);
 		} catch(Exception e) {
 			LogUtil.post(e.getCause().toString(), e.getMessage());
 			e.printStackTrace();
 			data = null;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.READ, start, (data != null) ? data.length : 0, data != null);
 		}
 
 		return data;
@@ -81,16 +124,21 @@ public final class FileUtils
 
 	public static final byte[] toBytes(InputStream is)
 	{
+		long start = IoMetrics.start();
 		byte[] data = null;
 
 		try {
-			data = new byte[is.available()];
-			is.read(data);
-			is.close();
+			try {
+				data = readAll(is, -1);
+			} finally {
+				is.close();
+			}
 		} catch(Exception e) {
 			LogUtil.post(e.getCause().toString(), e.getMessage());
 			e.printStackTrace();
 			data = null;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.READ, start, (data != null) ? data.length : 0, data != null);
 		}
 
 		return data;
@@ -111,6 +159,155 @@ public final class FileUtils
 	*@return  boolean  -  Success state of operation
 	*/
 	public static final boolean copy(File file, File dest)
+	{
+		long start = IoMetrics.start();
+		long[] bytes = (start != 0) ? new long[1] : null;
+		boolean copied = copyTree(file, dest, bytes);
+
+		IoMetrics.record(IoMetrics.Op.COPY, start, (bytes != null) ? bytes[0] : 0, copied);
+		return copied;
+	}
+
+	public static final boolean copy(File file, String destPath)
+	{
+		return (copy(file, new File(destPath)));
+	}
+
+
+	/*
+	* Moves the file/folder to a specified destination
+	*
+	*@method  FileUtils.move(file, dest)
+	*@param   file  -  The file/folder to be moved
+	*@param   dest  -  The destination where the file/folder will be moved to
+	*
+	*@method  FileUtils.move(file, destPath)
+	*@param   file  -  The file/folder to be moved
+	*@param   destPath  -  The string filepath of the destination
+	*
+	*@return   boolean  -  The success state of the operation
+	*/
+	public static final boolean move(File file, File dest)
+	{
+		long start = IoMetrics.start();
+		long[] bytes = (start != 0) ? new long[1] : null;
+		boolean moved = false;
+
+		if(copyTree(file, dest, bytes))
+			moved = deleteTree(file);
+
+		IoMetrics.record(IoMetrics.Op.MOVE, start, (bytes != null) ? bytes[0] : 0, moved);
+		return moved;
+	}
+
+	public static final boolean move(File file, String destPath)
+	{
+		return move(file, new File(destPath));
+	}
+
+	/*
+	* Copies a large file so that an interrupted copy can
+	* pick up where it stopped. Every 16 MB the copied
+	* length and a CRC-32 of the copied prefix are saved
+	* to "<dest>.ckpt". The next call checks that the source
+	* is unchanged and that the destination still matches
+	* the CRC before continuing from there; otherwise it
+	* starts over.
+	*
+	* Blocks that are all zeros are skipped instead of
+	* written, so sparse files (disk images, preallocated
+	* databases) stay sparse.
+	*
+	*@method  FileUtils.copyResumable(file, dest)
+	*@param   file  -  The file to be copied
+	*@param   dest  -  The destination file (not folder)
+	*@return  boolean  -  Success state of operation
+	*/
+	public static final boolean copyResumable(File file, File dest)
+	{
+		long start = IoMetrics.start();
+		File checkpoint = new File(dest.getPath() + ".ckpt");
+		byte[] buffer = BufferPool.acquire(COPY_BLOCK);
+		long written = 0;
+		boolean copied = false;
+
+		try {
+			if(!file.isFile() || !file.canRead() || dest.isDirectory())
+				return copied;
+
+			long length = file.length();
+			long mtime = file.lastModified();
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+
+			try {
+				RandomAccessFile out = new RandomAccessFile(dest, "rw");
+				try {
+					CRC32 crc = new CRC32();
+					long offset = resumeOffset(checkpoint, length, mtime, out, crc, buffer);
+					long saved = offset;
+
+					// Drop whatever was written after the checkpoint (or before a restart)
+					out.setLength(offset);
+					in.seek(offset);
+
+					while(offset < length)
+					{
+						int len = (int) Math.min(buffer.length, length - offset);
+						in.readFully(buffer, 0, len);
+						crc.update(buffer, 0, len);
+
+						if(!isZero(buffer, len))
+						{
+							out.seek(offset);
+							out.write(buffer, 0, len);
+							written += len;
+						}
+						offset += len;
+
+						if(offset - saved >= CHECKPOINT_INTERVAL && offset < length)
+						{
+							// The data must be on disk before the checkpoint claims it
+							if(out.length() < offset)
+								out.setLength(offset);
+							out.getFD().sync();
+							writeCheckpoint(checkpoint, length, mtime, offset, crc.getValue());
+							saved = offset;
+						}
+					}
+
+					if(file.length() != length || file.lastModified() != mtime)
+					{
+						checkpoint.delete();
+						throw new IOException("Source changed while copying: " + file);
+					}
+
+					// Trailing zero blocks become a hole
+					out.setLength(length);
+					out.getFD().sync();
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+
+			checkpoint.delete();
+			invalidate(dest, false);
+			copied = true;
+		} catch(Exception e) {
+			LogUtil.post(e.toString(), e.getMessage());
+			e.printStackTrace();
+			copied = false;
+		} finally {
+			BufferPool.release(buffer);
+			IoMetrics.record(IoMetrics.Op.COPY, start, written, copied);
+		}
+
+		return copied;
+	}
+
+	// copy() without the metrics, so folders are recorded as one operation; bytes (if not null) sums the copied sizes
+	private static boolean copyTree(File file, File dest, long[] bytes)
 	{
 		boolean canResume = false;
 		boolean copied = false;
@@ -140,17 +337,10 @@ public final class FileUtils
 				if(!canResume)
 					return copied;
 
-				InputStream is = new FileInputStream(file);
-				OutputStream os = new FileOutputStream(dest);
-				byte[] data = new byte[is.available()];
-
-				is.read(data);
-				is.close();
-
-				os.write(data);
-				os.flush();
-				os.close();
-
+				long len = copyFile(file, dest);
+				invalidate(dest, false);
+				if(bytes != null)
+					bytes[0] += len;
 				copied = true;
 			}
 
@@ -186,7 +376,7 @@ public final class FileUtils
 
 					File[] files = file.listFiles();
 					for(File f : files)
-						copy(f, dest);
+						copyTree(f, dest, bytes);
 
 					copied = true;
 				}
@@ -200,40 +390,6 @@ public final class FileUtils
 		return copied;
 	}
 
-	public static final boolean copy(File file, String destPath)
-	{
-		return (copy(file, new File(destPath)));
-	}
-
-
-	/*
-	* Moves the file/folder to a specified destination
-	*
-	*@method  FileUtils.move(file, dest)
-	*@param   file  -  The file/folder to be moved
-	*@param   dest  -  The destination where the file/folder will be moved to
-	*
-	*@method  FileUtils.move(file, destPath)
-	*@param   file  -  The file/folder to be moved
-	*@param   destPath  -  The string filepath of the destination
-	*
-	*@return   boolean  -  The success state of the operation
-	*/
-	public static final boolean move(File file, File dest)
-	{
-		boolean moved = false;
-
-		if(copy(file, dest))
-			moved = delete(file);
-
-		return moved;
-	}
-
-	public static final boolean move(File file, String destPath)
-	{
-		return move(file, new File(destPath));
-	}
-
 
 	/*
 	* Deletes a file/folder
@@ -247,27 +403,40 @@ public final class FileUtils
 	*@return  boolean  -  The success state of the operation
 	*/
 	public static final boolean delete(File file)
+	{
+		long start = IoMetrics.start();
+		boolean deleted = deleteTree(file);
+
+		IoMetrics.record(IoMetrics.Op.DELETE, start, 0, deleted);
+		return deleted;
+	}
+
+	public static final boolean delete(String filepath)
+	{
+		return (delete(new File(filepath)));
+	}
+
+	// delete() without the metrics, so folders are recorded as one operation
+	private static boolean deleteTree(File file)
 	{
 		boolean deleted = false;
 
 		if(file.isFile() || (file.isDirectory() && file.listFiles().length < 1))
+		{
 			deleted = file.delete();
+			invalidate(file, false);
+		}
 		else
 		{
 			File[] files = file.listFiles();
 			for(File f : files)
-				deleted = delete(f);
+				deleted = deleteTree(f);
 			deleted = file.delete();
 		}
 
 		return deleted;
 	}
 
-	public static final boolean delete(String filepath)
-	{
-		return (delete(new File(filepath)));
-	}
-
 
 	/*
 	* Renames a file/folder
@@ -288,7 +457,10 @@ public final class FileUtils
 		if(temp.exists())
 			return false;
 
-		return file.renameTo(new File(file.getParentFile(), name));
+		boolean renamed = file.renameTo(temp);
+		invalidate(file, true);
+		invalidate(temp, true);
+		return renamed;
 	}
 
 	public static final boolean rename(String filepath, String name)
@@ -324,42 +496,26 @@ public final class FileUtils
 	*/
 	public static final boolean writeToFile(File file, byte[] content, boolean overwrite)
 	{
+		long start = IoMetrics.start();
 		OutputStream os = null;
-		InputStream is = null;
-		String str1 = null;
-		String str2 = null;
 		boolean written = false;
-		byte[] data = null;
 
 		try {
 			if(!file.exists() || file.isDirectory())
 				return written;
 			
-			os = new FileOutputStream(file);
-			str2 = new String(content);
-
-			if(file.exists())
-			{
-				is = new FileInputStream(file);
-				data = new byte[is.available()];
-				is.read(data);
-				is.close();
-
-				str1 = new String(data);
-			}
-
-			if(overwrite)
-				os.write(content);
-			else
-				os.write((str1 + str2).getBytes());
-
+			os = new FileOutputStream(file, !overwrite);
+			os.write(content);
 			os.flush();
 			os.close();
+			invalidate(file, false);
 			written = true;
 		} catch(Exception e) {
 			LogUtil.post(e.getCause().toString(), e.getMessage());
 			e.printStackTrace();
 			written = false;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.WRITE, start, written ? content.length : 0, written);
 		}
 
 		return written;
@@ -382,7 +538,8 @@ public final class FileUtils
 
 
 	/*
-	* Reads a file
+	* Reads a file. Files are served from the cache when
+	* it is enabled (see enableCache).
 	*
 	*@method  FileUtils.readFile(file)
 	*@param   file  -  The file to read to
@@ -398,20 +555,20 @@ public final class FileUtils
 	*/
 	public static final byte[] readFile(File file)
 	{
+		long start = IoMetrics.start();
 		byte[] data = null;
 
 		try {
 			if(!file.exists() || file.isDirectory())
 				return data;
 
-			InputStream is = new FileInputStream(file);
-			data = new byte[is.available()];
-			is.read(data);
-			is.close();
+			data = read(file, true);
 		} catch(Exception e) {
 			LogUtil.post(e.getCause().toString(), e.getMessage());
 			e.printStackTrace();
 			data = null;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.READ, start, (data != null) ? data.length : 0, data != null);
 		}
 
 		return data;
@@ -424,22 +581,58 @@ public final class FileUtils
 
 	public static final byte[] readFile(InputStream is)
 	{
+		long start = IoMetrics.start();
 		byte[] data = null;
 		
 		try {
-			data = new byte[is.available()];
-			is.read(data);
-			is.close();
+			try {
+				data = readAll(is, -1);
+			} finally {
+				is.close();
+			}
 		} catch(Exception e) {
 			LogUtil.post(e.getCause().toString(), e.getMessage());
 			e.printStackTrace();
 			data = null;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.READ, start, (data != null) ? data.length : 0, data != null);
 		}
 		
 		return data;
 	}
 	
 	
+	/*
+	* Reads a file into a read-only buffer. With the cache
+	* on, the buffer is a view of the cached contents, so
+	* repeated reads cost no copy at all.
+	*
+	*@method  FileUtils.readBuffer(file)
+	*@param   file  -  The file to read to
+	*@return  ByteBuffer  -  The content of the file, or null on error
+	*/
+	public static final ByteBuffer readBuffer(File file)
+	{
+		long start = IoMetrics.start();
+		ByteBuffer buffer = null;
+
+		try {
+			if(!file.exists() || file.isDirectory())
+				return buffer;
+
+			buffer = ByteBuffer.wrap(read(file, false)).asReadOnlyBuffer();
+		} catch(Exception e) {
+			LogUtil.post(e.toString(), e.getMessage());
+			e.printStackTrace();
+			buffer = null;
+		} finally {
+			IoMetrics.record(IoMetrics.Op.READ, start, (buffer != null) ? buffer.remaining() : 0, buffer != null);
+		}
+
+		return buffer;
+	}
+	
+	
 	/*
 	* Converts filesize into human readable format
 	*
@@ -565,6 +758,184 @@ public final class FileUtils
 	
 	
 
+	// Reads a file through the cache when it is on; copy=false returns the shared cached array
+	private static byte[] read(File file, boolean copy) throws IOException
+	{
+		FileCache current = cache;
+		if(current != null)
+		{
+			byte[] data = current.get(file);
+			return copy ? Arrays.copyOf(data, data.length) : data;
+		}
+
+		InputStream is = new FileInputStream(file);
+		try {
+			return readAll(is, file.length());
+		} finally {
+			is.close();
+		}
+	}
+
+	private static void invalidate(File file, boolean tree)
+	{
+		FileCache current = cache;
+		if(current == null)
+			return;
+
+		if(tree)
+			current.invalidate(file);
+		else
+			current.invalidateFile(file);
+	}
+
+	// Reads the whole stream; expected (the file length, or -1) lets files be read straight into the result
+	static byte[] readAll(InputStream is, long expected) throws IOException
+	{
+		if(expected > Integer.MAX_VALUE - 8)
+			throw new IOException("File is too large to be read into memory");
+
+		byte[] data = new byte[(expected > 0) ? (int) expected : 0];
+		int count = 0;
+		int len;
+
+		while(count < data.length && (len = is.read(data, count, data.length - count)) > 0)
+			count += len;
+
+		// Unknown length, or the file grew while reading
+		byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+		try {
+			while((len = is.read(buffer)) > 0)
+			{
+				if(count + len > data.length)
+					data = Arrays.copyOf(data, Math.max(count + len, data.length * 2));
+
+				System.arraycopy(buffer, 0, data, count, len);
+				count += len;
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+
+		return (count == data.length) ? data : Arrays.copyOf(data, count);
+	}
+
+	// Streams one file into another through a pooled direct buffer, returning the bytes copied
+	private static long copyFile(File file, File dest) throws IOException
+	{
+		long copied = 0;
+
+		FileInputStream is = new FileInputStream(file);
+		try {
+			FileOutputStream os = new FileOutputStream(dest);
+			try {
+				FileChannel in = is.getChannel();
+				FileChannel out = os.getChannel();
+				ByteBuffer buffer = BufferPool.acquireDirect(BufferPool.DEFAULT_SIZE);
+
+				try {
+					while(in.read(buffer) != -1)
+					{
+						buffer.flip();
+						copied += buffer.remaining();
+						while(buffer.hasRemaining())
+							out.write(buffer);
+						buffer.clear();
+					}
+				} finally {
+					BufferPool.releaseDirect(buffer);
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+
+		return copied;
+	}
+
+	// Offset a resumable copy continues from, with crc covering the prefix; 0 if there is nothing valid to resume
+	private static long resumeOffset(File checkpoint, long length, long mtime, RandomAccessFile out, CRC32 crc, byte[] buffer) throws IOException
+	{
+		long[] saved = readCheckpoint(checkpoint);
+		if(saved == null || saved[0] != length || saved[1] != mtime || saved[2] > length || out.length() < saved[2])
+			return 0;
+
+		out.seek(0);
+		long remaining = saved[2];
+		while(remaining > 0)
+		{
+			int len = (int) Math.min(buffer.length, remaining);
+			out.readFully(buffer, 0, len);
+			crc.update(buffer, 0, len);
+			remaining -= len;
+		}
+
+		if(crc.getValue() == saved[3])
+			return saved[2];
+
+		crc.reset();
+		return 0;
+	}
+
+	// {source length, source mtime, offset, crc}, or null if missing or damaged
+	private static long[] readCheckpoint(File checkpoint)
+	{
+		if(checkpoint.length() != CHECKPOINT_LENGTH)
+			return null;
+
+		byte[] data = new byte[CHECKPOINT_LENGTH];
+		try {
+			RandomAccessFile raf = new RandomAccessFile(checkpoint, "r");
+			try {
+				raf.readFully(data);
+			} finally {
+				raf.close();
+			}
+		} catch(IOException e) {
+			return null;
+		}
+
+		ByteBuffer record = ByteBuffer.wrap(data);
+		CRC32 check = new CRC32();
+		check.update(data, 0, CHECKPOINT_LENGTH - 8);
+
+		if(record.getInt(0) != CHECKPOINT_MAGIC || record.getLong(CHECKPOINT_LENGTH - 8) != check.getValue())
+			return null;
+
+		return new long[]{record.getLong(4), record.getLong(12), record.getLong(20), record.getLong(28)};
+	}
+
+	private static void writeCheckpoint(File checkpoint, long length, long mtime, long offset, long crc) throws IOException
+	{
+		ByteBuffer record = ByteBuffer.allocate(CHECKPOINT_LENGTH);
+		record.putInt(CHECKPOINT_MAGIC).putLong(length).putLong(mtime).putLong(offset).putLong(crc);
+
+		// Guards against a torn write
+		CRC32 check = new CRC32();
+		check.update(record.array(), 0, CHECKPOINT_LENGTH - 8);
+		record.putLong(check.getValue());
+
+		RandomAccessFile raf = new RandomAccessFile(checkpoint, "rw");
+		try {
+			raf.seek(0);
+			raf.write(record.array());
+			raf.setLength(CHECKPOINT_LENGTH);
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static boolean isZero(byte[] buffer, int length)
+	{
+		for(int i = 0; i < length; i++)
+			if(buffer[i] != 0)
+				return false;
+
+		return true;
+	}
+
 	private static final String getCopiedName(File origFile)
 	{
 		String copied = origFile.getName();
@@ -0,0 +1,326 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* IoMetrics
+*
+* Operation counts, failures, bytes moved and latency
+* histograms for FileUtils and JarUtils, per operation
+* (read, write, copy, move, delete, compress).
+*
+* Metrics are off by default; a disabled build only pays
+* for one volatile read per operation. When enabled,
+* every thread records into it's own stripe of lock-free
+* counters, and a snapshot sums the stripes. Latencies
+* go into power-of-two buckets from 1 us to ~35 minutes.
+*
+* Usage:
+*   IoMetrics.setSink(new IoMetrics.Sink() {
+*       public void onReport(IoMetrics.Snapshot s) { ... }
+*   });
+*   IoMetrics.enable();
+*   IoMetrics.startReporting(60000);
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class IoMetrics
+{
+	/*
+	* The instrumented operations
+	*/
+	public enum Op
+	{
+		READ, WRITE, COPY, MOVE, DELETE, COMPRESS
+	}
+
+	public static final int BUCKETS = 32;
+
+	private static final int OPS = Op.values().length;
+
+	// Layout of one operation's slots
+	private static final int COUNT = 0;
+	private static final int ERRORS = 1;
+	private static final int BYTES = 2;
+	private static final int NANOS = 3;
+	private static final int HISTOGRAM = 4;
+	private static final int OP_SLOTS = HISTOGRAM + BUCKETS;
+
+	// Stripes are padded apart so threads don't share cache lines
+	private static final int STRIPE_SLOTS = OPS * OP_SLOTS + 8;
+	private static final int STRIPES;
+	private static final AtomicLongArray counters;
+
+	private static volatile boolean enabled;
+	private static volatile Sink sink;
+	private static ScheduledExecutorService reporter;
+
+	static {
+		int stripes = 1;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		while(stripes < cpus && stripes < 16)
+			stripes <<= 1;
+
+		STRIPES = stripes;
+		counters = new AtomicLongArray(STRIPES * STRIPE_SLOTS);
+	}
+
+	private IoMetrics()
+	{}
+
+	public static final void enable()
+	{
+		enabled = true;
+	}
+
+	// Stops recording; counts gathered so far are kept
+	public static final void disable()
+	{
+		enabled = false;
+	}
+
+	public static final boolean isEnabled()
+	{
+		return enabled;
+	}
+
+
+	/*
+	* Sets where report() sends snapshots. Pass null to
+	* stop exporting.
+	*
+	*@method  IoMetrics.setSink(sink)
+	*@param   sink  -  Receives the snapshots
+	*/
+	public static final void setSink(Sink sink)
+	{
+		IoMetrics.sink = sink;
+	}
+
+
+	/*
+	* Sends a snapshot to the sink every periodMs on a
+	* background daemon thread, replacing any earlier
+	* schedule.
+	*
+	*@method  IoMetrics.startReporting(periodMs)
+	*@param   periodMs  -  Milliseconds between reports
+	*/
+	public static final synchronized void startReporting(long periodMs)
+	{
+		stopReporting();
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "IoMetrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run()
+			{
+				report();
+			}
+		}, periodMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	public static final synchronized void stopReporting()
+	{
+		if(reporter != null)
+			reporter.shutdown();
+
+		reporter = null;
+	}
+
+	// Sends the current totals to the sink, if there is one
+	public static final void report()
+	{
+		Sink current = sink;
+		if(current != null)
+			current.onReport(snapshot());
+	}
+
+	// Sums every stripe into a consistent-enough view of the totals
+	public static final Snapshot snapshot()
+	{
+		long[] totals = new long[OPS * OP_SLOTS];
+		for(int stripe = 0; stripe < STRIPES; stripe++)
+		{
+			int base = stripe * STRIPE_SLOTS;
+			for(int i = 0; i < totals.length; i++)
+				totals[i] += counters.get(base + i);
+		}
+
+		return new Snapshot(totals);
+	}
+
+	public static final void reset()
+	{
+		for(int i = 0; i < counters.length(); i++)
+			counters.set(i, 0);
+	}
+
+	/*
+	* Starts timing an operation. Returns 0 when metrics
+	* are off, which makes the matching record() a no-op.
+	*/
+	static long start()
+	{
+		return enabled ? Math.max(1, System.nanoTime()) : 0;
+	}
+
+	static void record(Op op, long start, long bytes, boolean success)
+	{
+		if(start == 0)
+			return;
+
+		long nanos = Math.max(0, System.nanoTime() - start);
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		int base = stripe * STRIPE_SLOTS + op.ordinal() * OP_SLOTS;
+
+		counters.incrementAndGet(base + COUNT);
+		if(!success)
+			counters.incrementAndGet(base + ERRORS);
+		if(bytes > 0)
+			counters.addAndGet(base + BYTES, bytes);
+		counters.addAndGet(base + NANOS, nanos);
+		counters.incrementAndGet(base + HISTOGRAM + bucketOf(nanos));
+	}
+
+	// Bucket i holds latencies below 2^i microseconds
+	static int bucketOf(long nanos)
+	{
+		long micros = nanos >>> 10;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/*
+	* Receives periodic metric snapshots, e.g. to log them
+	* or forward them to an analytics backend
+	*/
+	public interface Sink
+	{
+		void onReport(Snapshot snapshot);
+	}
+
+	/*
+	* Totals at one point in time
+	*/
+	public static final class Snapshot
+	{
+		private final long[] totals;
+
+		Snapshot(long[] totals)
+		{
+			this.totals = totals;
+		}
+
+		public long getCount(Op op)
+		{
+			return totals[op.ordinal() * OP_SLOTS + COUNT];
+		}
+
+		public long getErrorCount(Op op)
+		{
+			return totals[op.ordinal() * OP_SLOTS + ERRORS];
+		}
+
+		public long getBytes(Op op)
+		{
+			return totals[op.ordinal() * OP_SLOTS + BYTES];
+		}
+
+		public long getTotalNanos(Op op)
+		{
+			return totals[op.ordinal() * OP_SLOTS + NANOS];
+		}
+
+		// Counts per latency bucket; bucket i covers [2^(i-1), 2^i) microseconds
+		public long[] getHistogram(Op op)
+		{
+			long[] histogram = new long[BUCKETS];
+			System.arraycopy(totals, op.ordinal() * OP_SLOTS + HISTOGRAM, histogram, 0, BUCKETS);
+			return histogram;
+		}
+
+
+		/*
+		* Estimates a latency percentile from the histogram.
+		* The result is the upper bound of the bucket the
+		* percentile falls in, so it over-estimates by at
+		* most 2x.
+		*
+		*@method  snapshot.getPercentileNanos(op, percentile)
+		*@param   op  -  The operation
+		*@param   percentile  -  0 to 100, e.g. 99
+		*@return  long  -  Latency in nanoseconds, or 0 if nothing was recorded
+		*/
+		public long getPercentileNanos(Op op, double percentile)
+		{
+			long count = getCount(op);
+			if(count == 0)
+				return 0;
+
+			long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+			int base = op.ordinal() * OP_SLOTS + HISTOGRAM;
+			long seen = 0;
+
+			for(int i = 0; i < BUCKETS; i++)
+			{
+				seen += totals[base + i];
+				if(seen >= rank && seen > 0)
+					return (1L << i) * 1024;
+			}
+
+			return (1L << (BUCKETS - 1)) * 1024;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder();
+			for(Op op : Op.values())
+			{
+				long count = getCount(op);
+				if(count == 0)
+					continue;
+
+				sb.append(op).append(": count=").append(count)
+					.append(" errors=").append(getErrorCount(op))
+					.append(" bytes=").append(getBytes(op))
+					.append(" avgUs=").append(getTotalNanos(op) / count / 1000)
+					.append(" p99Us<=").append(getPercentileNanos(op, 99) / 1000)
+					.append('\n');
+			}
+
+			return sb.toString();
+		}
+	}
+}
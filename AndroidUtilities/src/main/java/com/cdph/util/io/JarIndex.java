@@ -0,0 +1,436 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* Content index embedded by JarUtils into the archives
+* it produces (META-INF/CONTENTS.IDX). One line per file
+* entry, sorted by path:
+*
+*   path <TAB> size <TAB> crc32 <TAB> xxhash64
+*
+* The index lets an archive be checked against its own
+* central directory, or a source tree against the
+* archive, without inflating any entry data.
+*
+*@package  com.cdph.util.io
+*@class  JarIndex.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+public final class JarIndex
+{
+	public static final String ENTRY_NAME = "META-INF/CONTENTS.IDX";
+	private static final String HEADER = "#JarIndex 1";
+
+	private final String[] paths;
+	private final long[] sizes;
+	private final long[] crcs;
+	private final long[] hashes;
+
+	private JarIndex(String[] paths, long[] sizes, long[] crcs, long[] hashes)
+	{
+		this.paths = paths;
+		this.sizes = sizes;
+		this.crcs = crcs;
+		this.hashes = hashes;
+	}
+
+	public int size()
+	{
+		return paths.length;
+	}
+
+	public String getPath(int i)
+	{
+		return paths[i];
+	}
+
+	public long getSize(int i)
+	{
+		return sizes[i];
+	}
+
+	public long getCrc(int i)
+	{
+		return crcs[i];
+	}
+
+	public long getHash(int i)
+	{
+		return hashes[i];
+	}
+
+	// Position of the path in the index, or a negative value if absent
+	public int indexOf(String path)
+	{
+		return Arrays.binarySearch(paths, path);
+	}
+
+	/*
+	* Compares the index against a source tree in a single
+	* walk. Files whose size differs are reported without
+	* being read; the rest are hashed and compared. The walk
+	* follows the compressor's: skipped files are ignored and
+	* a directory reached twice (symlink cycles) is not re-entered.
+	*
+	*@method  index.diff(tree, skipped)
+	*@param   tree  -  The file/folder that was compressed
+	*@param   skipped  -  Files to ignore, such as the archive itself
+	*@return  JarIndex.Changes  -  Added, removed and modified paths
+	*/
+	public Changes diff(File tree, File... skipped) throws IOException
+	{
+		Changes changes = new Changes();
+		boolean[] seen = new boolean[paths.length];
+		Deque<File> pending = new ArrayDeque<File>();
+		XXHash64 hasher = new XXHash64();
+
+		File root = tree.getCanonicalFile();
+		Set<File> skip = new HashSet<File>();
+		for(File file : skipped)
+			skip.add(file.getCanonicalFile());
+		Set<File> visited = new HashSet<File>();
+		byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+		String parent = root.getParent();
+		int prefix = (parent == null) ? 0 : parent.length();
+		if(parent != null && !parent.endsWith(File.separator))
+			prefix++;
+
+		try {
+			pending.push(root);
+			while(!pending.isEmpty())
+			{
+				File source = pending.pop();
+
+				if(source.isDirectory())
+				{
+					File[] files = visited.add(source.getCanonicalFile()) ? source.listFiles() : null;
+					if(files != null)
+						for(File file : files)
+							pending.push(file);
+					continue;
+				}
+
+				if(skip.contains(source))
+					continue;
+
+				String path = source.getPath().substring(prefix).replace(File.separatorChar, '/');
+				int i = indexOf(path);
+
+				if(i < 0)
+					changes.added.add(path);
+				else
+				{
+					seen[i] = true;
+					if(source.length() != sizes[i] || hash(source, hasher, buffer) != hashes[i])
+						changes.modified.add(path);
+				}
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+
+		for(int i = 0; i < seen.length; i++)
+			if(!seen[i])
+				changes.removed.add(paths[i]);
+
+		Collections.sort(changes.added);
+		Collections.sort(changes.modified);
+		return changes;
+	}
+
+	/*
+	* Reads the index of a JAR produced by JarUtils. The
+	* central directory is walked once and only the index
+	* entry itself is inflated.
+	*
+	* Returns null if the archive carries no index.
+	*/
+	static JarIndex read(File jar) throws IOException
+	{
+		byte[] name = ENTRY_NAME.getBytes("UTF-8");
+		ZipDirectory dir = new ZipDirectory(jar);
+		long offset = -1;
+		long csize = 0;
+		long size = 0;
+		int method = 0;
+
+		try {
+			while(dir.next())
+				if(dir.nameEquals(name))
+				{
+					offset = dir.offset;
+					csize = dir.csize;
+					size = dir.size;
+					method = dir.method;
+				}
+		} finally {
+			dir.close();
+		}
+
+		if(offset < 0)
+			return null;
+		if(size > Integer.MAX_VALUE || csize > Integer.MAX_VALUE)
+			throw new ZipException("Index entry too large");
+
+		byte[] data = new byte[(int) csize];
+		RandomAccessFile raf = new RandomAccessFile(jar, "r");
+		try {
+			byte[] local = new byte[30];
+			raf.seek(offset);
+			raf.readFully(local);
+			raf.seek(offset + 30 + ZipDirectory.getShort(local, 26) + ZipDirectory.getShort(local, 28));
+			raf.readFully(data);
+		} finally {
+			raf.close();
+		}
+
+		if(method != 0)
+		{
+			Inflater inflater = new Inflater(true);
+			byte[] plain = new byte[(int) size];
+			try {
+				inflater.setInput(data);
+				int n = 0;
+				while(n < plain.length && !inflater.finished())
+				{
+					int len = inflater.inflate(plain, n, plain.length - n);
+					if(len == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+						throw new ZipException("Truncated index entry");
+					n += len;
+				}
+			} catch(DataFormatException e) {
+				throw new ZipException("Corrupt index entry: " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+
+			data = plain;
+		}
+
+		return parse(new String(data, "UTF-8"));
+	}
+
+	static JarIndex parse(String text) throws ZipException
+	{
+		String[] lines = text.split("\n");
+		if(lines.length == 0 || !lines[0].equals(HEADER))
+			throw new ZipException("Unknown index format");
+
+		int count = lines.length - 1;
+		String[] paths = new String[count];
+		long[] sizes = new long[count];
+		long[] crcs = new long[count];
+		long[] hashes = new long[count];
+
+		for(int i = 0; i < count; i++)
+		{
+			String[] fields = lines[i + 1].split("\t");
+			if(fields.length != 4)
+				throw new ZipException("Malformed index line " + (i + 1));
+
+			paths[i] = unescape(fields[0]);
+			sizes[i] = Long.parseLong(fields[1]);
+			crcs[i] = parseHex(fields[2]);
+			hashes[i] = parseHex(fields[3]);
+		}
+
+		return new JarIndex(paths, sizes, crcs, hashes);
+	}
+
+	/*
+	* Checks the index against the archive's own central
+	* directory: every indexed path must be present with
+	* the same size and CRC. No entry data is inflated.
+	*
+	*@method  index.matches(jar)
+	*@param   jar  -  The archive the index was read from
+	*@return  boolean
+	*/
+	public boolean matches(File jar) throws IOException
+	{
+		ZipDirectory dir = new ZipDirectory(jar);
+		int matched = 0;
+
+		try {
+			while(dir.next())
+			{
+				String name = dir.getName();
+				if(name.endsWith("/") || name.equals(ENTRY_NAME) || name.equals(JarFile.MANIFEST_NAME))
+					continue;
+
+				int i = indexOf(name);
+				if(i < 0 || sizes[i] != dir.size || crcs[i] != dir.crc)
+					return false;
+				matched++;
+			}
+		} finally {
+			dir.close();
+		}
+
+		return matched == paths.length;
+	}
+
+	private static long hash(File file, XXHash64 hasher, byte[] buffer) throws IOException
+	{
+		InputStream is = new FileInputStream(file);
+		try {
+			int len;
+			hasher.reset();
+			while((len = is.read(buffer)) != -1)
+				hasher.update(buffer, 0, len);
+			return hasher.getValue();
+		} finally {
+			is.close();
+		}
+	}
+
+	private static long parseHex(String hex)
+	{
+		long value = 0;
+		for(int i = 0; i < hex.length(); i++)
+			value = (value << 4) | Character.digit(hex.charAt(i), 16);
+		return value;
+	}
+
+	private static String escape(String path)
+	{
+		if(path.indexOf('\\') < 0 && path.indexOf('\t') < 0 && path.indexOf('\n') < 0)
+			return path;
+
+		return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+	}
+
+	private static String unescape(String path)
+	{
+		if(path.indexOf('\\') < 0)
+			return path;
+
+		StringBuilder str = new StringBuilder(path.length());
+		for(int i = 0; i < path.length(); i++)
+		{
+			char c = path.charAt(i);
+			if(c == '\\' && i + 1 < path.length())
+			{
+				c = path.charAt(++i);
+				c = (c == 't') ? '\t' : (c == 'n') ? '\n' : c;
+			}
+			str.append(c);
+		}
+
+		return str.toString();
+	}
+
+	private static String toHex(long value, int digits)
+	{
+		char[] chars = new char[digits];
+		for(int i = digits - 1; i >= 0; i--, value >>>= 4)
+			chars[i] = Character.forDigit((int) (value & 0xF), 16);
+		return new String(chars);
+	}
+
+	/*
+	* Paths that differ between an index and a source tree
+	*/
+	public static final class Changes
+	{
+		public final List<String> added = new ArrayList<String>();
+		public final List<String> removed = new ArrayList<String>();
+		public final List<String> modified = new ArrayList<String>();
+
+		public boolean isEmpty()
+		{
+			return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+		}
+	}
+
+	/*
+	* Collects index records while an archive is written
+	*/
+	static final class Builder
+	{
+		private final List<Record> records = new ArrayList<Record>();
+
+		void add(String path, long size, long crc, long hash)
+		{
+			records.add(new Record(path, size, crc, hash));
+		}
+
+		byte[] toBytes() throws IOException
+		{
+			Collections.sort(records);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + records.size() * 64);
+			StringBuilder line = new StringBuilder(HEADER).append('\n');
+			bytes.write(line.toString().getBytes("UTF-8"));
+
+			for(Record record : records)
+			{
+				line.setLength(0);
+				line.append(escape(record.path)).append('\t')
+					.append(record.size).append('\t')
+					.append(toHex(record.crc, 8)).append('\t')
+					.append(toHex(record.hash, 16)).append('\n');
+				bytes.write(line.toString().getBytes("UTF-8"));
+			}
+
+			return bytes.toByteArray();
+		}
+	}
+
+	private static final class Record implements Comparable<Record>
+	{
+		final String path;
+		final long size;
+		final long crc;
+		final long hash;
+
+		Record(String path, long size, long crc, long hash)
+		{
+			this.path = path;
+			this.size = size;
+			this.crc = crc;
+			this.hash = hash;
+		}
+
+		@Override
+		public int compareTo(Record other)
+		{
+			return path.compareTo(other.path);
+		}
+	}
+}
@@ -0,0 +1,431 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* A handle to a single JarUtils compression job. It can
+* be run on any thread, cancelled from another, and
+* reports per-entry and per-block progress together with
+* the time spent reading, deflating and writing.
+*
+* A failed or cancelled job never leaves a partially
+* written JAR behind.
+*
+*@package  com.cdph.util.io
+*@class  JarTask.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+public final class JarTask implements Runnable
+{
+	private final File target;
+	private final File directory;
+	private final String outputName;
+	private final boolean zip64;
+	private final JarIndex.Builder index;
+	private final Listener listener;
+
+	private volatile boolean cancelled;
+	private volatile boolean started;
+	private volatile boolean done;
+	private volatile File output;
+	private volatile Exception error;
+
+	private volatile long entries;
+	private volatile long bytesRead;
+	private volatile long bytesWritten;
+	private volatile long readNanos;
+	private volatile long hashNanos;
+	private volatile long deflateNanos;
+	private volatile long writeNanos;
+	private volatile long elapsedNanos;
+
+	JarTask(File target, File directory, String outputName, boolean zip64, boolean index, Listener listener)
+	{
+		this.target = target;
+		this.directory = directory;
+		this.outputName = outputName.endsWith(".jar") ? outputName : outputName + ".jar";
+		this.zip64 = zip64;
+		this.index = index ? new JarIndex.Builder() : null;
+		this.listener = listener;
+	}
+
+	/*
+	* Runs the job on the calling thread. A task can only
+	* be run once.
+	*/
+	@Override
+	public void run()
+	{
+		synchronized(this)
+		{
+			if(started)
+				throw new IllegalStateException("JarTask already started");
+			started = true;
+		}
+
+		long start = System.nanoTime();
+		long metricsStart = IoMetrics.start();
+		ZipWriter writer = null;
+		FileOutputStream os = null;
+		File out = new File(directory, outputName);
+		File partial = null;
+		File spool = null;
+		boolean success = false;
+
+		try {
+			checkCancelled();
+
+			if(!target.exists())
+				throw new IOException("Target does not exist: " + target);
+
+			if(!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Cannot create output directory: " + directory);
+
+			if(out.isDirectory())
+				throw new IOException("Output is a directory: " + out);
+
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+			// Written next to the output and moved over it at the end, so an existing JAR survives a failure
+			partial = File.createTempFile("jar", ".part", directory);
+			spool = File.createTempFile("cen", ".tmp", directory);
+			os = new FileOutputStream(partial);
+			writer = new ZipWriter(os, spool, zip64);
+			os = null;	// Closed by the writer from here on
+			writeManifest(manifest, writer);
+			compress(writer, out, partial, spool);
+
+			if(index != null)
+				writeIndex(writer);
+
+			checkCancelled();
+			writer.finish();
+			updateTimes(writer);
+			writer.close();
+			writer = null;
+
+			if(!partial.renameTo(out) && !(out.delete() && partial.renameTo(out)))
+				throw new IOException("Cannot move the finished JAR to " + out);
+
+			output = out;
+			success = true;
+		} catch(CancellationException e) {
+			cancelled = true;
+		} catch(Exception e) {
+			error = e;
+		} finally {
+			if(writer != null)
+			{
+				updateTimes(writer);
+				try {
+					writer.close();
+				} catch(IOException e) {
+					if(error == null)
+						error = e;
+				}
+			}
+
+			// The writer was never created, so the stream is still ours
+			if(os != null)
+			{
+				try {
+					os.close();
+				} catch(IOException e) {
+					if(error == null)
+						error = e;
+				}
+			}
+
+			// Only files this job created; never the existing output
+			if(!success)
+			{
+				if(partial != null)
+					partial.delete();
+				if(spool != null)
+					spool.delete();
+			}
+
+			elapsedNanos = System.nanoTime() - start;
+			IoMetrics.record(IoMetrics.Op.COMPRESS, metricsStart, bytesRead, success);
+			synchronized(this)
+			{
+				done = true;
+				notifyAll();
+			}
+		}
+
+		if(listener != null)
+			listener.onComplete(this);
+	}
+
+	/*
+	* Requests cancellation. The job stops at the next
+	* block boundary and deletes its partial output.
+	*/
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/*
+	* Blocks until the job has completed, failed or been
+	* cancelled.
+	*/
+	public synchronized void await() throws InterruptedException
+	{
+		while(!done)
+			wait();
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	// The finished JAR, or null if the job failed, was cancelled or is still running
+	public File getOutput()
+	{
+		return output;
+	}
+
+	// The exception that made the job fail, or null
+	public Exception getError()
+	{
+		return error;
+	}
+
+	public long getEntryCount()
+	{
+		return entries;
+	}
+
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	// Nanoseconds spent reading source files
+	public long getReadNanos()
+	{
+		return readNanos;
+	}
+
+	// Nanoseconds spent computing CRCs, index hashes and deflating
+	public long getDeflateNanos()
+	{
+		return deflateNanos + hashNanos;
+	}
+
+	// Nanoseconds spent writing the archive
+	public long getWriteNanos()
+	{
+		return writeNanos;
+	}
+
+	// Wall-clock nanoseconds of the whole job
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	// skipped: the output, the partial archive and the spool, which may live inside the target
+	private void compress(ZipWriter writer, File... skipped) throws IOException
+	{
+		byte[] buffer = BufferPool.acquire(BufferPool.DEFAULT_SIZE);
+		try {
+			compress(writer, buffer, skipped);
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	private void compress(ZipWriter writer, byte[] buffer, File[] skipped) throws IOException
+	{
+		Deque<File> pending = new ArrayDeque<File>();
+		XXHash64 hasher = (index != null) ? new XXHash64() : null;
+		// Canonical paths, so our own files are skipped even for targets like "."
+		File root = target.getCanonicalFile();
+		Set<File> skip = new HashSet<File>();
+		for(File file : skipped)
+			skip.add(file.getCanonicalFile());
+
+		String parent = root.getParent();
+		int prefix = (parent == null) ? 0 : parent.length();
+		if(parent != null && !parent.endsWith(File.separator))
+			prefix++;
+
+		// Canonical directories already walked, so a symlink cycle can't loop forever
+		Set<File> visited = new HashSet<File>();
+
+		pending.push(root);
+		while(!pending.isEmpty())
+		{
+			checkCancelled();
+
+			File source = pending.pop();
+			String path = source.getPath().substring(prefix).replace(File.separatorChar, '/');
+
+			if(source.isDirectory())
+			{
+				if(!visited.add(source.getCanonicalFile()))
+					continue;
+
+				if(!path.isEmpty())
+				{
+					writer.putNextEntry(path.endsWith("/") ? path : path + "/", source.lastModified(), true);
+					writer.closeEntry();
+					entryDone(writer, path);
+				}
+
+				File[] files = source.listFiles();
+				if(files != null)
+					for(int i = files.length - 1; i >= 0; i--)
+						pending.push(files[i]);
+			}
+
+			if(source.isFile() && !skip.contains(source))
+			{
+				// An unreadable file fails the job rather than leaving a hole in the archive
+				FileInputStream fis = new FileInputStream(source);
+				int len = 0;
+
+				try {
+					writer.putNextEntry(path, source.lastModified(), false);
+					if(hasher != null)
+						hasher.reset();
+
+					long size = 0;
+					while(true)
+					{
+						long start = System.nanoTime();
+						len = fis.read(buffer);
+						readNanos += System.nanoTime() - start;
+
+						if(len == -1)
+							break;
+
+						if(hasher != null)
+						{
+							start = System.nanoTime();
+							hasher.update(buffer, 0, len);
+							hashNanos += System.nanoTime() - start;
+						}
+
+						writer.write(buffer, 0, len);
+						size += len;
+						bytesRead += len;
+						bytesWritten = writer.getBytesWritten();
+
+						if(listener != null)
+							listener.onProgress(this, bytesRead, bytesWritten);
+						checkCancelled();
+					}
+
+					writer.closeEntry();
+					if(index != null)
+						index.add(path, size, writer.getCrc(), hasher.getValue());
+					entryDone(writer, path);
+				} finally {
+					fis.close();
+				}
+			}
+		}
+	}
+
+	private void writeManifest(Manifest manifest, ZipWriter writer) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		manifest.write(bytes);
+
+		byte[] data = bytes.toByteArray();
+		writer.putNextEntry(JarFile.MANIFEST_NAME, System.currentTimeMillis(), false);
+		writer.write(data, 0, data.length);
+		writer.closeEntry();
+		entryDone(writer, JarFile.MANIFEST_NAME);
+	}
+
+	private void writeIndex(ZipWriter writer) throws IOException
+	{
+		byte[] data = index.toBytes();
+		writer.putNextEntry(JarIndex.ENTRY_NAME, System.currentTimeMillis(), false);
+		writer.write(data, 0, data.length);
+		writer.closeEntry();
+		entryDone(writer, JarIndex.ENTRY_NAME);
+	}
+
+	private void entryDone(ZipWriter writer, String name)
+	{
+		entries = writer.getEntryCount();
+		bytesWritten = writer.getBytesWritten();
+		updateTimes(writer);
+
+		if(listener != null)
+			listener.onEntry(this, name);
+	}
+
+	private void updateTimes(ZipWriter writer)
+	{
+		deflateNanos = writer.getDeflateNanos();
+		writeNanos = writer.getWriteNanos();
+	}
+
+	private void checkCancelled()
+	{
+		if(cancelled)
+			throw new CancellationException();
+	}
+
+	/*
+	* Callbacks are invoked on the thread running the task.
+	* onProgress fires once per block read, so keep it cheap.
+	*/
+	public interface Listener
+	{
+		void onEntry(JarTask task, String name);
+
+		void onProgress(JarTask task, long bytesRead, long bytesWritten);
+
+		// Called once at the end; check getOutput(), getError() and isCancelled()
+		void onComplete(JarTask task);
+	}
+}
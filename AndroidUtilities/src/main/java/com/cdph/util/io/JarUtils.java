@@ -25,16 +25,16 @@
 
 package com.cdph.util.io;
 
+import android.util.Log;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 
 public final class JarUtils implements Cloneable
 {
+	public static final String TAG = JarUtils.class.getSimpleName();
+	public static boolean LOG_ERRORS = false;
+
 	/*
 	* Compressess the target files into a JAR file and
 	* stores to the specified directory
@@ -46,29 +46,7 @@ public final class JarUtils implements Cloneable
 	*/
 	public static final File compress(File target, File directory)
 	{
-		JarOutputStream jos = null;
-		Manifest manifest = null;
-		File output = null;
-
-		if(!directory.exists())
-			directory.mkdirs();
-
-		if(!target.exists())
-			return output;
-
-		try {
-			manifest = new Manifest();
-			output = new File(directory, target.getName() + ".jar");
-
-			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-			jos = new JarOutputStream(new FileOutputStream(output), manifest);
-			compress(target, target, jos);
-			jos.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
-
-		return output;
+		return compress(target, directory, target.getName() + ".jar", false);
 	}
 
 	/*
@@ -83,79 +61,233 @@ public final class JarUtils implements Cloneable
 	*/
 	public static final File compress(File target, File directory, String outputName)
 	{
-		JarOutputStream jos = null;
-		Manifest manifest = null;
-		File output = null;
+		return compress(target, directory, outputName, false);
+	}
 
-		if(!directory.exists())
-			directory.mkdirs();
+	/*
+	* Compressess the target files into a JAR file and
+	* stores to the specified directory. Zip64 records are
+	* written automatically once the archive needs them
+	* (more than 65,534 entries, or files/offsets of 4GB
+	* and up); pass zip64 = true to write them for every
+	* entry regardless.
+	*
+	* The tree is walked iteratively, so memory grows with
+	* the width of the directories being visited and not
+	* with the total number of files.
+	*
+	*@method  JarUtils.compress(target, directory, outputName, zip64)
+	*@param  target  -  The target file/folder to be compressed
+	*@param  directory  -  The directory of the output JAR file
+	*@param  outputName  -  The name of the output JAR file
+	*@param  zip64  -  Force Zip64 records on every entry
+	*@return  java.io.File  -  The output JAR file, or null if compression failed
+	*/
+	public static final File compress(File target, File directory, String outputName, boolean zip64)
+	{
+		return compress(target, directory, outputName, zip64, false);
+	}
 
-		if(!outputName.endsWith(".jar"))
-			outputName += ".jar";
+	/*
+	* Same as compress(target, directory, outputName, zip64),
+	* optionally hashing every file while it is streamed and
+	* appending a sorted content index (path, size, CRC-32,
+	* xxHash64) as META-INF/CONTENTS.IDX. The index keeps one
+	* small record per file in memory until the end.
+	*
+	*@method  JarUtils.compress(target, directory, outputName, zip64, index)
+	*@param  target  -  The target file/folder to be compressed
+	*@param  directory  -  The directory of the output JAR file
+	*@param  outputName  -  The name of the output JAR file
+	*@param  zip64  -  Force Zip64 records on every entry
+	*@param  index  -  Embed a content index
+	*@return  java.io.File  -  The output JAR file, or null if compression failed
+	*/
+	public static final File compress(File target, File directory, String outputName, boolean zip64, boolean index)
+	{
+		JarTask task = new JarTask(target, directory, outputName, zip64, index, null);
+		task.run();
 
-		if(!target.exists())
-			return output;
+		// I/O failures (missing target, unreadable file, full disk) are expected; anything else is a bug
+		Exception error = task.getError();
+		if(error instanceof IOException)
+			LogUtil.post(error.toString(), error.getMessage());
+		else if(error != null)
+			error.printStackTrace();
 
-		try {
-			manifest = new Manifest();
-			output = new File(directory, outputName);
+		return task.getOutput();
+	}
 
-			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-			jos = new JarOutputStream(new FileOutputStream(output), manifest);
-			compress(target, target, jos);
-			jos.close();
-		} catch(Exception e) {
-			e.printStackTrace();
-		}
+	/*
+	* Starts compressing the target files into a JAR file on
+	* a background thread and returns a handle to the job.
+	* The handle can cancel the job, wait for it and report
+	* entry/byte progress and read/deflate/write timings.
+	* A failed or cancelled job deletes its partial output.
+	*
+	*@method  JarUtils.compressAsync(target, directory, outputName, listener)
+	*@param  target  -  The target file/folder to be compressed
+	*@param  directory  -  The directory of the output JAR file
+	*@param  outputName  -  The name of the output JAR file
+	*@param  listener  -  Receives progress callbacks (may be null)
+	*
+	*@method  JarUtils.compressAsync(target, directory, outputName, zip64, listener)
+	*@param  target  -  The target file/folder to be compressed
+	*@param  directory  -  The directory of the output JAR file
+	*@param  outputName  -  The name of the output JAR file
+	*@param  zip64  -  Force Zip64 records on every entry
+	*@param  listener  -  Receives progress callbacks (may be null)
+	*
+	*@method  JarUtils.compressAsync(target, directory, outputName, zip64, index, listener)
+	*@param  target  -  The target file/folder to be compressed
+	*@param  directory  -  The directory of the output JAR file
+	*@param  outputName  -  The name of the output JAR file
+	*@param  zip64  -  Force Zip64 records on every entry
+	*@param  index  -  Embed a content index
+	*@param  listener  -  Receives progress callbacks (may be null)
+	*
+	*@return  com.cdph.util.io.JarTask  -  The running job
+	*/
+	public static final JarTask compressAsync(File target, File directory, String outputName, JarTask.Listener listener)
+	{
+		return compressAsync(target, directory, outputName, false, listener);
+	}
 
-		return output;
+	public static final JarTask compressAsync(File target, File directory, String outputName, boolean zip64, JarTask.Listener listener)
+	{
+		return compressAsync(target, directory, outputName, zip64, false, listener);
 	}
 
+	public static final JarTask compressAsync(File target, File directory, String outputName, boolean zip64, boolean index, JarTask.Listener listener)
+	{
+		JarTask task = new JarTask(target, directory, outputName, zip64, index, listener);
+		Thread thread = new Thread(task, "JarUtils-compress");
+
+		thread.start();
+		return task;
+	}
 
+	/*
+	* Verifies the central directory of a JAR/ZIP file,
+	* including Zip64 end records. Each record is read
+	* sequentially through a fixed buffer, so archives
+	* with millions of entries are verified in constant
+	* memory.
+	*
+	*@method  JarUtils.verify(archive)
+	*@param  archive  -  The JAR/ZIP file to be verified
+	*
+	*@method  JarUtils.verify(archive, checkLocalHeaders)
+	*@param  archive  -  The JAR/ZIP file to be verified
+	*@param  checkLocalHeaders  -  Also match every record against its local header (one seek per entry)
+	*
+	*@return  boolean  -  True if the archive is structurally valid
+	*/
+	public static final boolean verify(File archive)
+	{
+		return verify(archive, false);
+	}
 
-	private static void compress(File parentFile, File source, JarOutputStream jos)
+	public static final boolean verify(File archive, boolean checkLocalHeaders)
 	{
+		ZipDirectory dir = null;
+		RandomAccessFile raf = null;
+		boolean valid = false;
+
+		if(!archive.isFile())
+			return valid;
+
 		try {
-			String path = source.getPath();
-			path = path.replaceAll(parentFile.getParent(), "");
-			path = path.replace("\\", "/");
+			dir = new ZipDirectory(archive);
+			raf = checkLocalHeaders ? new RandomAccessFile(archive, "r") : null;
+			byte[] local = new byte[30];
+			byte[] name = new byte[256];
 
-			if(source.isDirectory())
+			while(dir.next())
 			{
-				File[] files = source.listFiles();
-				for(File file : files)
-					compress(parentFile, file, jos);
-
-				if(!path.isEmpty())
-				{
-					if(!path.endsWith("/"))
-						path += "/";
-
-					JarEntry entry = new JarEntry(path);
-					entry.setTime(source.lastModified());
-					jos.putNextEntry(entry);
-					jos.closeEntry();
-				}
+				if(dir.method != 0 && dir.method != 8)
+					return valid;
+
+				if(raf == null)
+					continue;
+
+				raf.seek(dir.offset);
+				raf.readFully(local);
+				if(ZipDirectory.getInt(local, 0) != ZipWriter.LOCSIG || ZipDirectory.getShort(local, 26) != dir.nameLength)
+					return valid;
+
+				if(name.length < dir.nameLength)
+					name = new byte[dir.nameLength];
+				raf.readFully(name, 0, dir.nameLength);
+				for(int i = 0; i < dir.nameLength; i++)
+					if(name[i] != dir.name[i])
+						return valid;
 			}
 
-			if(source.isFile())
-			{
-				FileInputStream fis = new FileInputStream(source);
-				byte[] buffer = new byte[1024];
-				int len = 1;
-
-				JarEntry entry = new JarEntry(path);
-				entry.setTime(source.lastModified());
-				jos.putNextEntry(entry);
-
-				while((len = fis.read(buffer)) != -1)
-					jos.write(buffer, 0, len);
-				jos.closeEntry();
-				fis.close();
+			valid = true;
+		} catch(Exception e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				if(dir != null)
+					dir.close();
+				if(raf != null)
+					raf.close();
+			} catch(IOException e) {
+				e.printStackTrace();
 			}
+		}
+
+		return valid;
+	}
+
+	/*
+	* Reads the content index embedded by compress(..., index).
+	* Only the index entry is inflated.
+	*
+	*@method  JarUtils.readIndex(archive)
+	*@param  archive  -  A JAR produced by JarUtils
+	*@return  com.cdph.util.io.JarIndex  -  The index, or null if absent/unreadable
+	*/
+	public static final JarIndex readIndex(File archive)
+	{
+		JarIndex index = null;
+
+		try {
+			index = JarIndex.read(archive);
+		} catch(Exception e) {
+			e.printStackTrace();
+			index = null;
+		}
+
+		return index;
+	}
+
+	/*
+	* Verifies an indexed JAR against the tree it was made
+	* from, in one pass over the central directory and one
+	* walk of the tree, without inflating any entry. Files
+	* are only read when their size still matches. The
+	* archive itself is ignored if it lives inside the tree.
+	*
+	*@method  JarUtils.verify(archive, tree)
+	*@param  archive  -  A JAR produced by compress(..., index)
+	*@param  tree  -  The file/folder that was compressed
+	*@return  boolean  -  True if the archive and the tree hold the same content
+	*/
+	public static final boolean verify(File archive, File tree)
+	{
+		boolean valid = false;
+
+		try {
+			JarIndex index = JarIndex.read(archive);
+			valid = index != null && index.matches(archive) && index.diff(tree, archive).isEmpty();
 		} catch(Exception e) {
 			e.printStackTrace();
+			valid = false;
 		}
+
+		return valid;
 	}
 
 	@Override
@@ -163,4 +295,13 @@ public final class JarUtils implements Cloneable
 	{
 		return this;
 	}
+
+	private static final class LogUtil
+	{
+		public static final void post(String cause, String message)
+		{
+			if(LOG_ERRORS)
+				Log.e(String.format("%s - %s", cause, TAG), String.format("Caused by: %s, %s", cause, message));
+		}
+	}
 }
@@ -0,0 +1,105 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* PooledOutputStream
+*
+* A BufferedOutputStream whose buffer is borrowed from
+* BufferPool and handed back on close.
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+final class PooledOutputStream extends FilterOutputStream
+{
+	private byte[] buffer;
+	private int count;
+
+	PooledOutputStream(OutputStream os, int size)
+	{
+		super(os);
+		this.buffer = BufferPool.acquire(size);
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if(count == buffer.length)
+			flushBuffer();
+
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		// Large writes skip the copy
+		if(len >= buffer.length)
+		{
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		}
+
+		if(len > buffer.length - count)
+			flushBuffer();
+
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if(buffer == null)
+			return;
+
+		try {
+			flushBuffer();
+		} finally {
+			try {
+				out.close();
+			} finally {
+				BufferPool.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		if(count > 0)
+		{
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* Streaming implementation of the 64-bit xxHash
+* function (XXH64), a fast non-cryptographic hash used
+* for content fingerprints.
+*
+*@package  com.cdph.util.io
+*@class  XXHash64.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+final class XXHash64
+{
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private final long seed;
+	private final byte[] memory = new byte[32];
+	private int memorySize;
+	private long total;
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+
+	XXHash64()
+	{
+		this(0);
+	}
+
+	XXHash64(long seed)
+	{
+		this.seed = seed;
+		reset();
+	}
+
+	void reset()
+	{
+		v1 = seed + PRIME1 + PRIME2;
+		v2 = seed + PRIME2;
+		v3 = seed;
+		v4 = seed - PRIME1;
+		total = 0;
+		memorySize = 0;
+	}
+
+	void update(byte[] b, int off, int len)
+	{
+		total += len;
+
+		if(memorySize + len < 32)
+		{
+			System.arraycopy(b, off, memory, memorySize, len);
+			memorySize += len;
+			return;
+		}
+
+		if(memorySize > 0)
+		{
+			int fill = 32 - memorySize;
+			System.arraycopy(b, off, memory, memorySize, fill);
+			v1 = round(v1, getLong(memory, 0));
+			v2 = round(v2, getLong(memory, 8));
+			v3 = round(v3, getLong(memory, 16));
+			v4 = round(v4, getLong(memory, 24));
+			off += fill;
+			len -= fill;
+			memorySize = 0;
+		}
+
+		while(len >= 32)
+		{
+			v1 = round(v1, getLong(b, off));
+			v2 = round(v2, getLong(b, off + 8));
+			v3 = round(v3, getLong(b, off + 16));
+			v4 = round(v4, getLong(b, off + 24));
+			off += 32;
+			len -= 32;
+		}
+
+		if(len > 0)
+		{
+			System.arraycopy(b, off, memory, 0, len);
+			memorySize = len;
+		}
+	}
+
+	long getValue()
+	{
+		long h;
+
+		if(total >= 32)
+		{
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		}
+		else
+			h = seed + PRIME5;
+
+		h += total;
+
+		int i = 0;
+		for(; i + 8 <= memorySize; i += 8)
+		{
+			h ^= round(0, getLong(memory, i));
+			h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+		}
+
+		if(i + 4 <= memorySize)
+		{
+			h ^= getInt(memory, i) * PRIME1;
+			h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+			i += 4;
+		}
+
+		for(; i < memorySize; i++)
+		{
+			h ^= (memory[i] & 0xFF) * PRIME5;
+			h = Long.rotateLeft(h, 11) * PRIME1;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	static long hash(byte[] b, int off, int len)
+	{
+		XXHash64 hasher = new XXHash64();
+		hasher.update(b, off, len);
+		return hasher.getValue();
+	}
+
+	private static long round(long acc, long input)
+	{
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+
+	private static long mergeRound(long acc, long val)
+	{
+		acc ^= round(0, val);
+		return acc * PRIME1 + PRIME4;
+	}
+
+	private static long getLong(byte[] b, int off)
+	{
+		return (getInt(b, off)) | (getInt(b, off + 4) << 32);
+	}
+
+	private static long getInt(byte[] b, int off)
+	{
+		return ((b[off] & 0xFFL))
+			| ((b[off + 1] & 0xFFL) << 8)
+			| ((b[off + 2] & 0xFFL) << 16)
+			| ((b[off + 3] & 0xFFL) << 24);
+	}
+}
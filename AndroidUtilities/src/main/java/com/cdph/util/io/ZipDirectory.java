@@ -0,0 +1,304 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* Sequential cursor over the central directory of a
+* ZIP/JAR file, including Zip64 end records. Records
+* are read through a fixed buffer one at a time, so
+* archives with millions of entries can be walked
+* without holding the directory in memory.
+*
+*@package  com.cdph.util.io
+*@class  ZipDirectory.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipException;
+
+import static com.cdph.util.io.ZipWriter.CENSIG;
+import static com.cdph.util.io.ZipWriter.ENDSIG;
+import static com.cdph.util.io.ZipWriter.ZIP64_ENDSIG;
+import static com.cdph.util.io.ZipWriter.ZIP64_EXTID;
+import static com.cdph.util.io.ZipWriter.ZIP64_LOCSIG;
+import static com.cdph.util.io.ZipWriter.ZIP64_MAGICVAL;
+
+final class ZipDirectory
+{
+	private static final int ENDHDR = 22;
+	private static final int CENHDR = 46;
+	private static final int ZIP64_LOCHDR = 20;
+	private static final int ZIP64_ENDHDR = 56;
+
+	private final File file;
+	private final InputStream in;
+	private final byte[] header = new byte[CENHDR];
+	private byte[] extra = new byte[64];
+
+	final long entries;
+	final long cenOffset;
+	final long cenSize;
+	final boolean zip64;
+
+	private long read;
+	private long index;
+
+	// Fields of the current record
+	byte[] name = new byte[256];
+	int nameLength;
+	int method;
+	long crc;
+	long size;
+	long csize;
+	long offset;
+
+	ZipDirectory(File file) throws IOException
+	{
+		this.file = file;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		long[] end;
+		try {
+			end = readEnd(raf);
+		} finally {
+			raf.close();
+		}
+
+		this.entries = end[0];
+		this.cenSize = end[1];
+		this.cenOffset = end[2];
+		this.zip64 = end[3] != 0;
+
+		in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		skipFully(in, cenOffset);
+	}
+
+	/*
+	* Advances to the next central directory record.
+	* Returns false once all declared entries were read.
+	*/
+	boolean next() throws IOException
+	{
+		if(index >= entries)
+		{
+			if(read != cenSize)
+				throw new ZipException("Central directory size mismatch: declared " + cenSize + ", read " + read);
+			return false;
+		}
+
+		readFully(in, header, 0, CENHDR);
+		if(getInt(header, 0) != CENSIG)
+			throw new ZipException("Bad central directory signature at entry " + index);
+
+		method = getShort(header, 10);
+		crc = getInt(header, 16);
+		csize = getInt(header, 20);
+		size = getInt(header, 24);
+		nameLength = getShort(header, 28);
+		int extraLength = getShort(header, 30);
+		int commentLength = getShort(header, 32);
+		offset = getInt(header, 42);
+
+		if(nameLength > name.length)
+			name = new byte[Math.max(nameLength, name.length * 2)];
+		readFully(in, name, 0, nameLength);
+
+		if(extraLength > extra.length)
+			extra = new byte[extraLength];
+		readFully(in, extra, 0, extraLength);
+		readZip64Extra(extraLength);
+		skipFully(in, commentLength);
+
+		read += CENHDR + nameLength + extraLength + commentLength;
+		index++;
+
+		if(size == ZIP64_MAGICVAL || csize == ZIP64_MAGICVAL || offset == ZIP64_MAGICVAL)
+			throw new ZipException("Missing Zip64 extra field at entry " + (index - 1));
+		if(offset + 30 + nameLength + csize > cenOffset)
+			throw new ZipException("Entry data overlaps the central directory at entry " + (index - 1));
+
+		return true;
+	}
+
+	String getName() throws IOException
+	{
+		return new String(name, 0, nameLength, "UTF-8");
+	}
+
+	boolean nameEquals(byte[] other)
+	{
+		if(other.length != nameLength)
+			return false;
+
+		for(int i = 0; i < nameLength; i++)
+			if(name[i] != other[i])
+				return false;
+
+		return true;
+	}
+
+	File getFile()
+	{
+		return file;
+	}
+
+	void close() throws IOException
+	{
+		in.close();
+	}
+
+	private void readZip64Extra(int length) throws ZipException
+	{
+		int pos = 0;
+		while(pos + 4 <= length)
+		{
+			int id = getShort(extra, pos);
+			int len = getShort(extra, pos + 2);
+			int p = pos + 4;
+			pos = p + len;
+
+			if(pos > length)
+				throw new ZipException("Truncated extra field at entry " + index);
+			if(id != ZIP64_EXTID)
+				continue;
+
+			if(size == ZIP64_MAGICVAL && p + 8 <= pos)
+			{
+				size = getLong(extra, p);
+				p += 8;
+			}
+
+			if(csize == ZIP64_MAGICVAL && p + 8 <= pos)
+			{
+				csize = getLong(extra, p);
+				p += 8;
+			}
+
+			if(offset == ZIP64_MAGICVAL && p + 8 <= pos)
+				offset = getLong(extra, p);
+		}
+	}
+
+	// Returns {entries, cenSize, cenOffset, zip64}
+	private static long[] readEnd(RandomAccessFile raf) throws IOException
+	{
+		long length = raf.length();
+		int window = (int) Math.min(length, ENDHDR + 0xFFFF);
+		byte[] tail = new byte[window];
+		raf.seek(length - window);
+		raf.readFully(tail);
+
+		for(int i = window - ENDHDR; i >= 0; i--)
+		{
+			if(getInt(tail, i) != ENDSIG || i + ENDHDR + getShort(tail, i + 20) != window)
+				continue;
+
+			long entries = getShort(tail, i + 10);
+			long cenSize = getInt(tail, i + 12);
+			long cenOffset = getInt(tail, i + 16);
+			long endPos = length - window + i;
+
+			if(endPos >= ZIP64_LOCHDR)
+			{
+				byte[] loc = new byte[ZIP64_LOCHDR];
+				raf.seek(endPos - ZIP64_LOCHDR);
+				raf.readFully(loc);
+
+				if(getInt(loc, 0) == ZIP64_LOCSIG)
+				{
+					long zip64End = getLong(loc, 8);
+					byte[] end = new byte[ZIP64_ENDHDR];
+					if(zip64End < 0 || zip64End + ZIP64_ENDHDR > endPos)
+						throw new ZipException("Bad Zip64 end locator");
+
+					raf.seek(zip64End);
+					raf.readFully(end);
+					if(getInt(end, 0) != ZIP64_ENDSIG)
+						throw new ZipException("Bad Zip64 end record signature");
+
+					entries = getLong(end, 32);
+					cenSize = getLong(end, 40);
+					cenOffset = getLong(end, 48);
+					if(cenOffset + cenSize > zip64End)
+						throw new ZipException("Central directory overlaps the Zip64 end record");
+
+					return new long[]{entries, cenSize, cenOffset, 1};
+				}
+			}
+
+			if(cenSize == ZIP64_MAGICVAL || cenOffset == ZIP64_MAGICVAL)
+				throw new ZipException("Zip64 end record expected but not found");
+			if(cenOffset + cenSize > endPos)
+				throw new ZipException("Central directory overlaps the end record");
+
+			return new long[]{entries, cenSize, cenOffset, 0};
+		}
+
+		throw new ZipException("End of central directory record not found");
+	}
+
+	static int getShort(byte[] b, int off)
+	{
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+	}
+
+	static long getInt(byte[] b, int off)
+	{
+		return (getShort(b, off) | ((long) getShort(b, off + 2) << 16)) & 0xFFFFFFFFL;
+	}
+
+	static long getLong(byte[] b, int off)
+	{
+		return getInt(b, off) | (getInt(b, off + 4) << 32);
+	}
+
+	private static void readFully(InputStream is, byte[] b, int off, int len) throws IOException
+	{
+		while(len > 0)
+		{
+			int n = is.read(b, off, len);
+			if(n == -1)
+				throw new EOFException("Unexpected end of central directory");
+
+			off += n;
+			len -= n;
+		}
+	}
+
+	private static void skipFully(InputStream is, long n) throws IOException
+	{
+		while(n > 0)
+		{
+			long skipped = is.skip(n);
+			if(skipped <= 0)
+			{
+				if(is.read() == -1)
+					throw new EOFException("Unexpected end of file");
+				skipped = 1;
+			}
+
+			n -= skipped;
+		}
+	}
+}
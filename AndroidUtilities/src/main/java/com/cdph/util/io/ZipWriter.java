@@ -0,0 +1,413 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+* Streaming ZIP writer used by JarUtils. Unlike
+* java.util.zip.ZipOutputStream it emits Zip64 records
+* explicitly (independent of the platform version) and
+* spools the central directory to a temporary file, so
+* memory does not grow with the number of entries.
+*
+*@package  com.cdph.util.io
+*@class  ZipWriter.java
+*@author  John Roy L. Calimlim (SnoopyCodeX)
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+final class ZipWriter
+{
+	static final long LOCSIG = 0x04034b50L;
+	static final long EXTSIG = 0x08074b50L;
+	static final long CENSIG = 0x02014b50L;
+	static final long ENDSIG = 0x06054b50L;
+	static final long ZIP64_ENDSIG = 0x06064b50L;
+	static final long ZIP64_LOCSIG = 0x07064b50L;
+
+	static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+	static final int ZIP64_MAGICCOUNT = 0xFFFF;
+	static final int ZIP64_EXTID = 0x0001;
+	static final int JAR_MAGIC = 0xCAFE;
+
+	private static final int FLAG_DATADESCR = 0x0008;
+	private static final int FLAG_UTF8 = 0x0800;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	private final CountingOutputStream out;
+	private final CountingOutputStream cen;
+	private final File spool;
+	private final boolean forceZip64;
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final Calendar calendar = Calendar.getInstance();
+	private final byte[] buffer;
+
+	private long count;
+	private long deflateNanos;
+	private long writeNanos;
+	private boolean open;
+	private boolean finished;
+
+	private byte[] name;
+	private long time;
+	private int method;
+	private long offset;
+	private long size;
+	private long csize;
+
+	ZipWriter(OutputStream os, File spool, boolean forceZip64) throws IOException
+	{
+		// Open the spool first; nothing pooled or native has been taken yet if it fails
+		OutputStream spoolStream = new FileOutputStream(spool);
+
+		this.spool = spool;
+		this.forceZip64 = forceZip64;
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		this.buffer = BufferPool.acquire(8192);
+		this.out = new CountingOutputStream(new PooledOutputStream(os, BufferPool.DEFAULT_SIZE));
+		this.cen = new CountingOutputStream(new PooledOutputStream(spoolStream, BufferPool.DEFAULT_SIZE));
+	}
+
+	/*
+	* Starts a new entry. Directories are written stored
+	* with no data, files are deflated with their sizes in
+	* a data descriptor, so the local header never needs
+	* Zip64 fields (as with java.util.zip.ZipOutputStream).
+	*/
+	void putNextEntry(String entryName, long lastModified, boolean directory) throws IOException
+	{
+		if(open)
+			closeEntry();
+
+		name = entryName.getBytes("UTF-8");
+		if(name.length > 0xFFFF)
+			throw new ZipException("Entry name too long: " + entryName);
+
+		time = lastModified;
+		method = directory ? STORED : DEFLATED;
+		offset = out.count;
+		size = 0;
+		csize = 0;
+		crc.reset();
+		deflater.reset();
+
+		boolean first = (count == 0);
+		int extraLen = first ? 4 : 0;
+
+		writeInt(out, LOCSIG);
+		writeShort(out, method == STORED ? 10 : 20);
+		writeShort(out, method == STORED ? FLAG_UTF8 : (FLAG_UTF8 | FLAG_DATADESCR));
+		writeShort(out, method);
+		writeInt(out, toDosTime(time));
+		writeInt(out, 0);
+		writeInt(out, 0);
+		writeInt(out, 0);
+		writeShort(out, name.length);
+		writeShort(out, extraLen);
+		out.write(name, 0, name.length);
+
+		if(first)
+		{
+			writeShort(out, JAR_MAGIC);
+			writeShort(out, 0);
+		}
+
+		open = true;
+	}
+
+	void write(byte[] b, int off, int len) throws IOException
+	{
+		if(!open || method == STORED)
+			throw new ZipException("No file entry is open");
+
+		long start = System.nanoTime();
+		crc.update(b, off, len);
+		deflateNanos += System.nanoTime() - start;
+
+		size += len;
+		deflater.setInput(b, off, len);
+		while(!deflater.needsInput())
+			deflate();
+	}
+
+	void closeEntry() throws IOException
+	{
+		if(!open)
+			return;
+
+		if(method == DEFLATED)
+		{
+			deflater.finish();
+			while(!deflater.finished())
+				deflate();
+
+			// 8-byte sizes only when they don't fit, as the JDK writer does; the local
+			// header carries no Zip64 extra, so readers can't expect either width
+			writeInt(out, EXTSIG);
+			writeInt(out, crc.getValue());
+			if(size >= ZIP64_MAGICVAL || csize >= ZIP64_MAGICVAL)
+			{
+				writeLong(out, csize);
+				writeLong(out, size);
+			}
+			else
+			{
+				writeInt(out, csize);
+				writeInt(out, size);
+			}
+		}
+
+		writeCentralRecord();
+		count++;
+		open = false;
+	}
+
+	/*
+	* Writes the central directory and end records. The
+	* Zip64 end records are written whenever the entry
+	* count, directory size or offset overflow the classic
+	* fields, or when Zip64 output was forced.
+	*/
+	void finish() throws IOException
+	{
+		if(finished)
+			return;
+
+		closeEntry();
+		cen.close();
+
+		long start = System.nanoTime();
+		long cenOffset = out.count;
+		long cenSize = cen.count;
+		InputStream is = new FileInputStream(spool);
+		try {
+			int len;
+			while((len = is.read(buffer)) != -1)
+				out.write(buffer, 0, len);
+		} finally {
+			is.close();
+		}
+
+		boolean zip64 = forceZip64 || count >= ZIP64_MAGICCOUNT || cenSize >= ZIP64_MAGICVAL || cenOffset >= ZIP64_MAGICVAL;
+		if(zip64)
+		{
+			long endOffset = out.count;
+
+			writeInt(out, ZIP64_ENDSIG);
+			writeLong(out, 44);
+			writeShort(out, 45);
+			writeShort(out, 45);
+			writeInt(out, 0);
+			writeInt(out, 0);
+			writeLong(out, count);
+			writeLong(out, count);
+			writeLong(out, cenSize);
+			writeLong(out, cenOffset);
+
+			writeInt(out, ZIP64_LOCSIG);
+			writeInt(out, 0);
+			writeLong(out, endOffset);
+			writeInt(out, 1);
+		}
+
+		int entries = (int) (zip64 ? Math.min(count, ZIP64_MAGICCOUNT) : count);
+		writeInt(out, ENDSIG);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeShort(out, entries);
+		writeShort(out, entries);
+		writeInt(out, zip64 ? Math.min(cenSize, ZIP64_MAGICVAL) : cenSize);
+		writeInt(out, zip64 ? Math.min(cenOffset, ZIP64_MAGICVAL) : cenOffset);
+		writeShort(out, 0);
+
+		out.flush();
+		writeNanos += System.nanoTime() - start;
+		finished = true;
+	}
+
+	void close() throws IOException
+	{
+		try {
+			if(!finished)
+				cen.close();
+			out.close();
+		} finally {
+			deflater.end();
+			spool.delete();
+			BufferPool.release(buffer);
+		}
+	}
+
+	long getEntryCount()
+	{
+		return count;
+	}
+
+	long getBytesWritten()
+	{
+		return out.count;
+	}
+
+	// CRC-32 of the current or last closed entry
+	long getCrc()
+	{
+		return crc.getValue();
+	}
+
+	// Time spent in CRC and deflate, in nanoseconds
+	long getDeflateNanos()
+	{
+		return deflateNanos;
+	}
+
+	// Time spent handing bytes to the output, in nanoseconds
+	long getWriteNanos()
+	{
+		return writeNanos;
+	}
+
+	private void deflate() throws IOException
+	{
+		long start = System.nanoTime();
+		int len = deflater.deflate(buffer, 0, buffer.length);
+		long mid = System.nanoTime();
+		deflateNanos += mid - start;
+
+		if(len > 0)
+		{
+			out.write(buffer, 0, len);
+			csize += len;
+			writeNanos += System.nanoTime() - mid;
+		}
+	}
+
+	private void writeCentralRecord() throws IOException
+	{
+		boolean first = (count == 0);
+		boolean bigSize = forceZip64 || size >= ZIP64_MAGICVAL;
+		boolean bigCsize = forceZip64 || csize >= ZIP64_MAGICVAL;
+		boolean bigOffset = forceZip64 || offset >= ZIP64_MAGICVAL;
+		int zip64Len = (bigSize ? 8 : 0) + (bigCsize ? 8 : 0) + (bigOffset ? 8 : 0);
+		int version = zip64Len > 0 ? 45 : (method == STORED ? 10 : 20);
+		int extraLen = (first ? 4 : 0) + (zip64Len > 0 ? 4 + zip64Len : 0);
+
+		writeInt(cen, CENSIG);
+		writeShort(cen, version);
+		writeShort(cen, version);
+		writeShort(cen, method == STORED ? FLAG_UTF8 : (FLAG_UTF8 | FLAG_DATADESCR));
+		writeShort(cen, method);
+		writeInt(cen, toDosTime(time));
+		writeInt(cen, method == STORED ? 0 : crc.getValue());
+		writeInt(cen, bigCsize ? ZIP64_MAGICVAL : csize);
+		writeInt(cen, bigSize ? ZIP64_MAGICVAL : size);
+		writeShort(cen, name.length);
+		writeShort(cen, extraLen);
+		writeShort(cen, 0);
+		writeShort(cen, 0);
+		writeShort(cen, 0);
+		writeInt(cen, 0);
+		writeInt(cen, bigOffset ? ZIP64_MAGICVAL : offset);
+		cen.write(name, 0, name.length);
+
+		if(first)
+		{
+			writeShort(cen, JAR_MAGIC);
+			writeShort(cen, 0);
+		}
+
+		if(zip64Len > 0)
+		{
+			writeShort(cen, ZIP64_EXTID);
+			writeShort(cen, zip64Len);
+			if(bigSize)
+				writeLong(cen, size);
+			if(bigCsize)
+				writeLong(cen, csize);
+			if(bigOffset)
+				writeLong(cen, offset);
+		}
+	}
+
+	private long toDosTime(long millis)
+	{
+		calendar.setTimeInMillis(millis);
+		int year = calendar.get(Calendar.YEAR);
+		if(year < 1980)
+			return (1 << 21) | (1 << 16);
+
+		return ((long) (year - 1980) << 25)
+			| ((calendar.get(Calendar.MONTH) + 1) << 21)
+			| (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+			| (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+			| (calendar.get(Calendar.MINUTE) << 5)
+			| (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private static void writeShort(OutputStream os, int v) throws IOException
+	{
+		os.write(v & 0xFF);
+		os.write((v >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream os, long v) throws IOException
+	{
+		writeShort(os, (int) (v & 0xFFFF));
+		writeShort(os, (int) ((v >>> 16) & 0xFFFF));
+	}
+
+	private static void writeLong(OutputStream os, long v) throws IOException
+	{
+		writeInt(os, v & 0xFFFFFFFFL);
+		writeInt(os, v >>> 32);
+	}
+
+	private static final class CountingOutputStream extends FilterOutputStream
+	{
+		private long count;
+
+		CountingOutputStream(OutputStream os)
+		{
+			super(os);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* RelativeTimeTicker
+*
+* Keeps "N minutes ago" labels fresh without
+* re-formatting every visible item on a timer. Each
+* registered time is queued by the instant its label
+* next changes (see TimeUtils.nextTransition), and a
+* tick only touches the items that are due, so the cost
+* follows the number of label changes rather than
+* items x ticks.
+*
+* Usage:
+*   ticker.register(holder, post.time);   // onBind
+*   ticker.unregister(holder);            // onRecycle
+*   ticker.start(new Handler(Looper.getMainLooper()));
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.time;
+
+import android.os.Handler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+public final class RelativeTimeTicker<K>
+{
+	private final Map<K, Entry<K>> entries = new HashMap<K, Entry<K>>();
+	private final PriorityQueue<Entry<K>> queue = new PriorityQueue<Entry<K>>();
+	private final Listener<K> listener;
+
+	private Handler handler;
+	private int removedCount;
+	private long scheduledAt = Long.MAX_VALUE;
+
+	private final Runnable tick = new Runnable() {
+		@Override
+		public void run()
+		{
+			synchronized(RelativeTimeTicker.this)
+			{
+				scheduledAt = Long.MAX_VALUE;
+			}
+
+			tick(TimeUtils.currentTimeMillis());
+		}
+	};
+
+	public RelativeTimeTicker(Listener<K> listener)
+	{
+		this.listener = listener;
+	}
+
+
+	/*
+	* Starts tracking a time for the given key, replacing
+	* any earlier registration of that key. The current
+	* label is returned so it can be bound immediately;
+	* the listener is only called when it later changes.
+	*
+	*@method  ticker.register(key, timeInMS)
+	*@param   key  -  Identifies the item (e.g. a view holder)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@return  string  -  The current relative time string
+	*/
+	public synchronized String register(K key, long timeInMS)
+	{
+		long now = TimeUtils.currentTimeMillis();
+		remove(entries.remove(key));
+
+		Entry<K> entry = new Entry<K>(key, timeInMS);
+		entry.label = TimeUtils.toRelativeTime(timeInMS, now);
+		entry.validUntil = TimeUtils.nextTransition(timeInMS, now);
+
+		entries.put(key, entry);
+		queue.add(entry);
+		schedule();
+
+		return entry.label;
+	}
+
+
+	/*
+	* Stops tracking the key. The queued slot is dropped
+	* lazily, and the queue is compacted once most of it
+	* is made of dropped slots.
+	*
+	*@method  ticker.unregister(key)
+	*@param   key  -  The key passed to register
+	*/
+	public synchronized void unregister(K key)
+	{
+		remove(entries.remove(key));
+	}
+
+	public synchronized void clear()
+	{
+		for(Entry<K> entry : entries.values())
+			entry.removed = true;
+
+		entries.clear();
+		queue.clear();
+		removedCount = 0;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+
+	/*
+	* Refreshes every item whose label changed at or before
+	* "now" and calls the listener for each of them. The
+	* listener is called after the ticker's lock is released,
+	* so it may register/unregister keys freely.
+	*
+	*@method  ticker.tick(now)
+	*@param   now  -  The current time in milliseconds
+	*@return  long  -  The instant of the next change, or Long.MAX_VALUE if none
+	*/
+	public long tick(long now)
+	{
+		List<K> keys = null;
+		List<String> labels = null;
+		long next;
+
+		synchronized(this)
+		{
+			Entry<K> entry;
+
+			while((entry = queue.peek()) != null && entry.validUntil <= now)
+			{
+				queue.poll();
+				if(entry.removed)
+				{
+					removedCount--;
+					continue;
+				}
+
+				String label = TimeUtils.toRelativeTime(entry.time, now);
+				entry.validUntil = TimeUtils.nextTransition(entry.time, now);
+				queue.add(entry);
+
+				if(!label.equals(entry.label))
+				{
+					entry.label = label;
+					if(keys == null)
+					{
+						keys = new ArrayList<K>();
+						labels = new ArrayList<String>();
+					}
+
+					keys.add(entry.key);
+					labels.add(label);
+				}
+			}
+
+			schedule();
+			next = nextChange();
+		}
+
+		if(keys != null)
+			for(int i = 0; i < keys.size(); i++)
+				listener.onLabelChanged(keys.get(i), labels.get(i));
+
+		return next;
+	}
+
+	// The instant, in milliseconds, of the next pending label change
+	public synchronized long nextChange()
+	{
+		Entry<K> entry;
+
+		while((entry = queue.peek()) != null && entry.removed)
+		{
+			queue.poll();
+			removedCount--;
+		}
+
+		return (entry != null) ? entry.validUntil : Long.MAX_VALUE;
+	}
+
+
+	/*
+	* Runs tick() automatically on the handler's thread,
+	* waking only when the earliest label is due. Use a
+	* main-thread handler to update views directly from
+	* the listener.
+	*
+	*@method  ticker.start(handler)
+	*@param   handler  -  The handler the ticks are posted to
+	*/
+	public synchronized void start(Handler handler)
+	{
+		stop();
+		this.handler = handler;
+		schedule();
+	}
+
+	public synchronized void stop()
+	{
+		if(handler != null)
+			handler.removeCallbacks(tick);
+
+		handler = null;
+		scheduledAt = Long.MAX_VALUE;
+	}
+
+	private void remove(Entry<K> entry)
+	{
+		if(entry == null)
+			return;
+
+		entry.removed = true;
+		if(++removedCount > entries.size() + 64)
+		{
+			queue.clear();
+			queue.addAll(entries.values());
+			removedCount = 0;
+		}
+	}
+
+	private void schedule()
+	{
+		if(handler == null)
+			return;
+
+		long next = nextChange();
+		if(next == Long.MAX_VALUE || next >= scheduledAt)
+			return;
+
+		handler.removeCallbacks(tick);
+		scheduledAt = next;
+		handler.postDelayed(tick, Math.max(0, next - TimeUtils.currentTimeMillis()));
+	}
+
+	/*
+	* Receives the new label of an item whose relative
+	* time string changed
+	*/
+	public interface Listener<K>
+	{
+		void onLabelChanged(K key, String label);
+	}
+
+	private static final class Entry<K> implements Comparable<Entry<K>>
+	{
+		final K key;
+		final long time;
+		String label;
+		long validUntil;
+		boolean removed;
+
+		Entry(K key, long time)
+		{
+			this.key = key;
+			this.time = time;
+		}
+
+		@Override
+		public int compareTo(Entry<K> other)
+		{
+			return (validUntil < other.validUntil) ? -1 : ((validUntil == other.validUntil) ? 0 : 1);
+		}
+	}
+}
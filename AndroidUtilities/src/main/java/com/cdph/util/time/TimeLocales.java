@@ -0,0 +1,188 @@
+/*
+* Copyright 2020 SnoopyCodeX | Cyber Droid Developers PH
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*
+*
+* TimeLocales
+*
+* Localized wording used by TimeUtils. Each language
+* lists its "Just now" text, the words placed before and
+* after the count for past and future times, and the
+* plural forms of every unit (same order as
+* TimeUtils.TIME_IN_MILLIS) as "one|other" or
+* "one|few|many".
+*
+* Everything is compiled into flat arrays when the class
+* loads, so a label is a constant-time table lookup.
+*
+* To add a language, append a row to LOCALES and, if its
+* plural rules differ from the existing ones, a case to
+* category().
+*
+*@author  John Roy L. Calimlim
+*@copyright  2020
+*@link  https://www.facebook.com/cdphdevs
+*/
+
+package com.cdph.util.time;
+
+import java.util.Locale;
+
+final class TimeLocales
+{
+	// Plural categories
+	static final int ONE = 0;
+	static final int FEW = 1;
+	static final int MANY = 2;
+	static final int OTHER = 3;
+	static final int CATEGORIES = 4;
+
+	// Plural rules
+	private static final int RULE_ONE = 0;			// one: n = 1
+	private static final int RULE_ZERO_ONE = 1;		// one: n = 0, 1
+	private static final int RULE_SLAVIC = 2;		// one / few / many by last digits
+
+	static final int PAST = 0;
+	static final int FUTURE = 1;
+
+	private static final Object[][] LOCALES = {
+		{"en", RULE_ONE, "Just now", "", " ago", "", " from now", new String[]{
+			"second|seconds", "minute|minutes", "hour|hours", "day|days", "week|weeks",
+			"month|months", "year|years", "decade|decades", "century|centuries"}},
+
+		{"es", RULE_ONE, "Justo ahora", "hace ", "", "dentro de ", "", new String[]{
+			"segundo|segundos", "minuto|minutos", "hora|horas", "día|días", "semana|semanas",
+			"mes|meses", "año|años", "década|décadas", "siglo|siglos"}},
+
+		{"pt", RULE_ZERO_ONE, "Agora mesmo", "há ", "", "em ", "", new String[]{
+			"segundo|segundos", "minuto|minutos", "hora|horas", "dia|dias", "semana|semanas",
+			"mês|meses", "ano|anos", "década|décadas", "século|séculos"}},
+
+		{"fr", RULE_ZERO_ONE, "À l'instant", "il y a ", "", "dans ", "", new String[]{
+			"seconde|secondes", "minute|minutes", "heure|heures", "jour|jours", "semaine|semaines",
+			"mois|mois", "an|ans", "décennie|décennies", "siècle|siècles"}},
+
+		{"it", RULE_ONE, "Proprio ora", "", " fa", "tra ", "", new String[]{
+			"secondo|secondi", "minuto|minuti", "ora|ore", "giorno|giorni", "settimana|settimane",
+			"mese|mesi", "anno|anni", "decennio|decenni", "secolo|secoli"}},
+
+		{"de", RULE_ONE, "Gerade eben", "vor ", "", "in ", "", new String[]{
+			"Sekunde|Sekunden", "Minute|Minuten", "Stunde|Stunden", "Tag|Tagen", "Woche|Wochen",
+			"Monat|Monaten", "Jahr|Jahren", "Jahrzehnt|Jahrzehnten", "Jahrhundert|Jahrhunderten"}},
+
+		{"ru", RULE_SLAVIC, "Только что", "", " назад", "через ", "", new String[]{
+			"секунду|секунды|секунд", "минуту|минуты|минут", "час|часа|часов", "день|дня|дней", "неделю|недели|недель",
+			"месяц|месяца|месяцев", "год|года|лет", "десятилетие|десятилетия|десятилетий", "век|века|веков"}},
+	};
+
+	static final int COUNT = LOCALES.length;
+	static final int ENGLISH = 0;
+
+	private static final String[] LANGUAGES = new String[COUNT];
+	private static final int[] RULES = new int[COUNT];
+
+	// [lang]
+	static final String[] JUST_NOW = new String[COUNT];
+
+	// [lang * 2 + direction]
+	static final String[] PREFIXES = new String[COUNT * 2];
+
+	// [((lang * 2 + direction) * units + unit) * CATEGORIES + category], e.g. " minutes ago"
+	static final String[] SUFFIXES;
+
+	private static final int UNITS;
+
+	static {
+		UNITS = ((String[]) LOCALES[0][7]).length;
+		SUFFIXES = new String[COUNT * 2 * UNITS * CATEGORIES];
+
+		for(int lang = 0; lang < COUNT; lang++)
+		{
+			Object[] row = LOCALES[lang];
+			String[] units = (String[]) row[7];
+			if(units.length != UNITS)
+				throw new IllegalStateException("Language " + row[0] + " defines " + units.length + " units, expected " + UNITS);
+
+			LANGUAGES[lang] = (String) row[0];
+			RULES[lang] = (Integer) row[1];
+			JUST_NOW[lang] = (String) row[2];
+
+			for(int dir = PAST; dir <= FUTURE; dir++)
+			{
+				String suffix = (String) row[4 + dir * 2];
+				PREFIXES[lang * 2 + dir] = (String) row[3 + dir * 2];
+
+				for(int unit = 0; unit < UNITS; unit++)
+				{
+					String[] forms = units[unit].split("\\|");
+					String one = forms[0];
+					String few = forms[1];
+					String many = (forms.length > 2) ? forms[2] : forms[1];
+					int base = ((lang * 2 + dir) * UNITS + unit) * CATEGORIES;
+
+					SUFFIXES[base + ONE] = " " + one + suffix;
+					SUFFIXES[base + FEW] = " " + few + suffix;
+					SUFFIXES[base + MANY] = " " + many + suffix;
+					SUFFIXES[base + OTHER] = " " + few + suffix;
+				}
+			}
+		}
+	}
+
+	// Index of the locale's language, falling back to English
+	static int indexOf(Locale locale)
+	{
+		String language = locale.getLanguage();
+		for(int i = 0; i < COUNT; i++)
+			if(LANGUAGES[i].equals(language))
+				return i;
+
+		return ENGLISH;
+	}
+
+	static int category(int lang, long n)
+	{
+		switch(RULES[lang])
+		{
+			case RULE_ONE:
+				return (n == 1) ? ONE : OTHER;
+
+			case RULE_ZERO_ONE:
+				return (n == 0 || n == 1) ? ONE : OTHER;
+
+			case RULE_SLAVIC:
+				long mod10 = n % 10;
+				long mod100 = n % 100;
+				if(mod10 == 1 && mod100 != 11)
+					return ONE;
+				if(mod10 >= 2 && mod10 <= 4 && (mod100 < 12 || mod100 > 14))
+					return FEW;
+				return MANY;
+
+			default:
+				return OTHER;
+		}
+	}
+
+	static String prefix(int lang, int direction)
+	{
+		return PREFIXES[lang * 2 + direction];
+	}
+
+	static String suffix(int lang, int direction, int unit, long n)
+	{
+		return SUFFIXES[((lang * 2 + direction) * UNITS + unit) * CATEGORIES + category(lang, n)];
+	}
+}
@@ -24,11 +24,15 @@
 * If you want to add more timeline(don't know what
 * it's called, sorry). Just add the appropriate time
 * in milliseconds inside of TIME_IN_MILLIS array. The
-* position of the added timeline must correspond to it's
-* name inside of WORD_EXTENSIONS array. (See current code).
+* position of the added timeline must correspond to the
+* position of it's plural forms in every language of
+* TimeLocales. (See current code). TIME_IN_MILLIS must
+* stay sorted.
 *
 * Supports: 
 *   -Future & Past Relative Times from seconds to centuries
+*   -English, Spanish, Portuguese, French, Italian, German
+*    and Russian wording (see TimeLocales)
 *
 *@author  John Roy L. Calimlim
 *@credits  Programming PH (GC)
@@ -38,38 +42,51 @@
 
 package com.cdph.util.time;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.math.BigInteger;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public final class TimeUtils
 {
-	private static final List<BigInteger> TIME_IN_MILLIS = (List<BigInteger>) Arrays.asList(
-		BigInteger.valueOf(TimeUnit.SECONDS.toMillis(1)),		//1 Second
-		BigInteger.valueOf(TimeUnit.MINUTES.toMillis(1)),		//1 Minute
-		BigInteger.valueOf(TimeUnit.HOURS.toMillis(1)),			//1 Hour
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(1)),			//1 Day
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(1) * 7),		//1 Week
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(1) * 30),		//1 Month
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(365)),		//1 Year
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(365) * 10),	//1 Decade
-		BigInteger.valueOf(TimeUnit.DAYS.toMillis(365) * 100)	//1 Century
-	);
-
-	private static final List<String> WORD_EXTENSIONS = (List<String>) Arrays.asList(
-		"second",
-		"minute",
-		"hour",
-		"day",
-		"week",
-		"month",
-		"year",
-		"decade",
-		"century"
-	);
+	private static final long[] TIME_IN_MILLIS = {
+		TimeUnit.SECONDS.toMillis(1),		//1 Second
+		TimeUnit.MINUTES.toMillis(1),		//1 Minute
+		TimeUnit.HOURS.toMillis(1),			//1 Hour
+		TimeUnit.DAYS.toMillis(1),			//1 Day
+		TimeUnit.DAYS.toMillis(1) * 7,		//1 Week
+		TimeUnit.DAYS.toMillis(1) * 30,		//1 Month
+		TimeUnit.DAYS.toMillis(365),		//1 Year
+		TimeUnit.DAYS.toMillis(365) * 10,	//1 Decade
+		TimeUnit.DAYS.toMillis(365) * 100	//1 Century
+	};
+
+	// Batches at least this large are split across threads by toRelativeTimeParallel
+	public static final int PARALLEL_THRESHOLD = 16 * 1024;
+
+	// Labels with counts below this are cached, per direction and unit
+	private static final int CACHED_COUNTS = 100;
+	private static final String[] LABELS = new String[TimeLocales.COUNT * 2 * TIME_IN_MILLIS.length * CACHED_COUNTS];
+
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		@Override
+		public long now()
+		{
+			return System.currentTimeMillis();
+		}
+	};
+
+	private static volatile Clock clock = SYSTEM_CLOCK;
+	private static volatile ExecutorService executor;
+	private static volatile int language = TimeLocales.ENGLISH;
 
-	
 	/*
 	* Converts the time(in milliseconds) into 
 	* relative time string.
@@ -85,126 +102,469 @@ public final class TimeUtils
 	*/
 	public static final String toRelativeTime(long timeInMS)
 	{
-		long now = System.currentTimeMillis();
-		long diff = now - timeInMS;
+		return toRelativeTime(timeInMS, clock.now());
+	}
 
-		if(diff < 0)
-			return computeFutureRelativeTime(diff);
-		return computePastRelativeTime(diff);
+	
+	/*
+	* Same as toRelativeTime(timeInMS) but relative to an
+	* explicit "now". Labels with a count below 100 are
+	* built once and shared, so most calls allocate nothing.
+	*
+	*@method  TimeUtils.toRelativeTime(timeInMS, now)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@return  string
+	*/
+	public static final String toRelativeTime(long timeInMS, long now)
+	{
+		return toRelativeTime(timeInMS, now, language);
 	}
 
-	private static final String computeFutureRelativeTime(long timeInMS)
+	
+	/*
+	* Same as toRelativeTime(timeInMS, now) but worded for
+	* the given locale. Unsupported languages fall back to
+	* English.
+	*
+	*@method  TimeUtils.toRelativeTime(timeInMS, now, locale)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@param   locale  -  The locale of the wording
+	*@return  string
+	*/
+	public static final String toRelativeTime(long timeInMS, long now, Locale locale)
+	{
+		return toRelativeTime(timeInMS, now, TimeLocales.indexOf(locale));
+	}
+
+	
+	/*
+	* Converts a batch of times(in milliseconds) into
+	* relative time strings against a single clock reading,
+	* so every row is labelled consistently. Results are
+	* written into the caller's array at the same indexes.
+	*
+	*@method  TimeUtils.toRelativeTime(times, out)
+	*@param   times  -  Times / Dates that are specified in milliseconds
+	*@param   out  -  Receives one label per time (at least times.length long)
+	*
+	*@method  TimeUtils.toRelativeTime(times, now, out)
+	*@param   times  -  Times / Dates that are specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@param   out  -  Receives one label per time (at least times.length long)
+	*
+	*@return  String[]  -  The out array
+	*/
+	public static final String[] toRelativeTime(long[] times, String[] out)
 	{
-		String ret = "Just now";
+		return toRelativeTime(times, clock.now(), out);
+	}
 
-		for(int i = 0; i < TIME_IN_MILLIS.size(); i++)
+	public static final String[] toRelativeTime(long[] times, long now, String[] out)
+	{
+		checkBatch(times, out.length);
+		format(times, now, out, 0, times.length);
+		return out;
+	}
+
+	
+	/*
+	* Same as toRelativeTime(times, now, out) but splits
+	* arrays of PARALLEL_THRESHOLD or more times across a
+	* shared pool of worker threads. Smaller arrays are
+	* formatted on the calling thread.
+	*
+	*@method  TimeUtils.toRelativeTimeParallel(times, now, out)
+	*@param   times  -  Times / Dates that are specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@param   out  -  Receives one label per time (at least times.length long)
+	*@return  String[]  -  The out array
+	*/
+	public static final String[] toRelativeTimeParallel(final long[] times, final long now, final String[] out)
+	{
+		checkBatch(times, out.length);
+		if(times.length < PARALLEL_THRESHOLD)
 		{
-			StringBuilder str = new StringBuilder();
-			String ext = WORD_EXTENSIONS.get(i);
-			long num = TIME_IN_MILLIS.get(i).longValue();
-			long quot = -timeInMS / num;
+			format(times, now, out, 0, times.length);
+			return out;
+		}
 
-			if(i < TIME_IN_MILLIS.size()-1)
-			{
-				long nxt = TIME_IN_MILLIS.get(i + 1).longValue();
+		ExecutorService pool = getExecutor();
+		int chunks = Math.min(times.length / (PARALLEL_THRESHOLD / 4), Runtime.getRuntime().availableProcessors() * 4);
+		int chunk = (times.length + chunks - 1) / chunks;
+		List<Future<?>> futures = new ArrayList<Future<?>>(chunks);
 
-				if(timeInMS <= -num && timeInMS > -nxt)
+		for(int start = chunk; start < times.length; start += chunk)
+		{
+			final int from = start;
+			final int to = Math.min(start + chunk, times.length);
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run()
 				{
-					str.append(quot)
-						.append(" ")
-						.append((quot > 1) ? toPluralForm(ext) : ext)
-						.append(" from now");
-
-					ret = str.toString();
-					break;
+					format(times, now, out, from, to);
 				}
-			}
-			else
-			{
-				if(timeInMS <= -num)
-				{
-					str.append(quot)
-						.append(" ")
-						.append((quot > 1) ? toPluralForm(ext) : ext)
-						.append(" from now");
+			}));
+		}
 
-					ret = str.toString();
-					break;
-				}
-			}
+		format(times, now, out, 0, Math.min(chunk, times.length));
+
+		try {
+			for(Future<?> future : futures)
+				future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while formatting", e);
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("Formatting failed", e.getCause());
 		}
 
-		return ret;
+		return out;
 	}
 
-	private static final String computePastRelativeTime(long timeInMS)
+	
+	/*
+	* Appends a batch of relative time strings to one
+	* StringBuilder against a single "now", recording where
+	* each label ends instead of inserting separators. Label
+	* i spans [ends[i-1], ends[i]) (starting at the builder's
+	* original length for i = 0).
+	*
+	*@method  TimeUtils.appendTo(sb, times, now, ends)
+	*@param   sb  -  The StringBuilder to append to
+	*@param   times  -  Times / Dates that are specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@param   ends  -  Receives the end offset of each label (at least times.length long)
+	*@return  StringBuilder  -  The same builder
+	*/
+	public static final StringBuilder appendTo(StringBuilder sb, long[] times, long now, int[] ends)
 	{
-		String ret = "Just now";
+		checkBatch(times, ends.length);
+		for(int i = 0; i < times.length; i++)
+		{
+			appendTo(sb, times[i], now);
+			ends[i] = sb.length();
+		}
+
+		return sb;
+	}
 
-		for(int i = 0; i < TIME_IN_MILLIS.size(); i++)
+	
+	/*
+	* Appends the relative time string of the time(in
+	* milliseconds) to a StringBuilder or any Appendable.
+	* The unit strings are prebuilt, so nothing else is
+	* allocated while formatting. Reuse one builder across
+	* rows (setLength(0)) to keep the hot path garbage-free.
+	*
+	*@method  TimeUtils.appendTo(sb, timeInMS)
+	*@param   sb  -  The StringBuilder to append to
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@return  StringBuilder  -  The same builder
+	*
+	*@method  TimeUtils.appendTo(sb, timeInMS, now)
+	*@param   sb  -  The StringBuilder to append to
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@return  StringBuilder  -  The same builder
+	*
+	*@method  TimeUtils.appendTo(sb, timeInMS, now, locale)
+	*@param   sb  -  The StringBuilder to append to
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@param   locale  -  The locale of the wording
+	*@return  StringBuilder  -  The same builder
+	*
+	*@method  TimeUtils.appendTo(out, timeInMS)
+	*@param   out  -  The Appendable to append to
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@return  Appendable  -  The same appendable
+	*
+	*@method  TimeUtils.appendTo(out, timeInMS, now)
+	*@param   out  -  The Appendable to append to
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@return  Appendable  -  The same appendable
+	*/
+	public static final StringBuilder appendTo(StringBuilder sb, long timeInMS)
+	{
+		return appendTo(sb, timeInMS, clock.now());
+	}
+
+	public static final StringBuilder appendTo(StringBuilder sb, long timeInMS, long now)
+	{
+		return appendTo(sb, timeInMS, now, language);
+	}
+
+	public static final StringBuilder appendTo(StringBuilder sb, long timeInMS, long now, Locale locale)
+	{
+		return appendTo(sb, timeInMS, now, TimeLocales.indexOf(locale));
+	}
+
+	public static final Appendable appendTo(Appendable out, long timeInMS) throws IOException
+	{
+		return appendTo(out, timeInMS, clock.now());
+	}
+
+	public static final Appendable appendTo(Appendable out, long timeInMS, long now) throws IOException
+	{
+		if(out instanceof StringBuilder)
+			return appendTo((StringBuilder) out, timeInMS, now);
+
+		int lang = language;
+		long diff = now - timeInMS;
+		int unit = unitOf(diff);
+
+		if(unit < 0)
+			return out.append(TimeLocales.JUST_NOW[lang]);
+
+		int direction = (diff < 0) ? TimeLocales.FUTURE : TimeLocales.PAST;
+		long quot = Math.abs(diff / TIME_IN_MILLIS[unit]);
+
+		out.append(TimeLocales.prefix(lang, direction));
+		appendNumber(out, quot);
+		return out.append(TimeLocales.suffix(lang, direction, unit, quot));
+	}
+
+	
+	/*
+	* Converts the time(in milliseconds) into a relative
+	* time string together with the instant at which that
+	* string will next change, so callers can skip
+	* re-formatting until then.
+	*
+	* Example: for a time 90 seconds in the past the label
+	* is "1 minute ago" and it stays valid until the time
+	* is 120 seconds in the past.
+	*
+	*@method  TimeUtils.getRelativeTime(timeInMS)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*
+	*@method  TimeUtils.getRelativeTime(timeInMS, now)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*
+	*@return  TimeUtils.RelativeTime  -  The label and its expiry
+	*/
+	public static final RelativeTime getRelativeTime(long timeInMS)
+	{
+		return getRelativeTime(timeInMS, clock.now());
+	}
+
+	public static final RelativeTime getRelativeTime(long timeInMS, long now)
+	{
+		return new RelativeTime(toRelativeTime(timeInMS, now), nextTransition(timeInMS, now));
+	}
+
+	
+	/*
+	* Gets the first instant after "now" at which the
+	* relative time string of the time(in milliseconds)
+	* changes. Returns Long.MAX_VALUE if it never changes
+	* within the range of a long.
+	*
+	*@method  TimeUtils.nextTransition(timeInMS, now)
+	*@param   timeInMS  -  Time / Date that is specified in milliseconds
+	*@param   now  -  The current time in milliseconds
+	*@return  long  -  The instant, in milliseconds, the label changes
+	*/
+	public static final long nextTransition(long timeInMS, long now)
+	{
+		long diff = now - timeInMS;
+		int unit = unitOf(diff);
+
+		// "Just now" covers (-1s, +1s) and lasts until one second has passed
+		if(unit < 0)
+			return addClamped(timeInMS, TIME_IN_MILLIS[0]);
+
+		long millis = TIME_IN_MILLIS[unit];
+		if(diff < 0)
 		{
-			StringBuilder str = new StringBuilder();
-			String ext = WORD_EXTENSIONS.get(i);
-			long num = TIME_IN_MILLIS.get(i).longValue();
-			long quot = timeInMS / num;
+			// The count drops once the distance falls below quot * unit
+			long quot = -(diff / millis);
+			return addClamped(timeInMS, -(quot * millis) + 1);
+		}
 
-			if(i < TIME_IN_MILLIS.size()-1)
-			{
-				long nxt = TIME_IN_MILLIS.get(i + 1).longValue();
+		long quot = diff / millis;
+		long boundary = (quot >= Long.MAX_VALUE / millis - 1) ? Long.MAX_VALUE : (quot + 1) * millis;
+		if(unit + 1 < TIME_IN_MILLIS.length)
+			boundary = Math.min(boundary, TIME_IN_MILLIS[unit + 1]);
 
-				if(timeInMS >= num && timeInMS < nxt)
-				{
-					str.append(quot)
-						.append(" ")
-						.append((quot > 1) ? toPluralForm(ext) : ext)
-						.append(" ago");
+		return addClamped(timeInMS, boundary);
+	}
 
-					ret = str.toString();
-					break;
-				}
-			}
-			else
+	// The clock read by methods that take no explicit "now"
+	static long currentTimeMillis()
+	{
+		return clock.now();
+	}
+
+	private static long addClamped(long a, long b)
+	{
+		long sum = a + b;
+		if(b > 0 && sum < a)
+			return Long.MAX_VALUE;
+		if(b < 0 && sum > a)
+			return Long.MIN_VALUE;
+		return sum;
+	}
+	
+	/*
+	* Replaces the clock used by every method that does not
+	* take an explicit "now" (useful for tests or for a
+	* frame-wide time snapshot). Pass null to restore the
+	* system clock.
+	*
+	*@method  TimeUtils.setClock(clock)
+	*@param   clock  -  The clock to read "now" from
+	*/
+	public static final void setClock(Clock clock)
+	{
+		TimeUtils.clock = (clock != null) ? clock : SYSTEM_CLOCK;
+	}
+
+	
+	/*
+	* Sets the language used by every method that does not
+	* take an explicit locale. Defaults to English; other
+	* unsupported languages also fall back to English.
+	*
+	*@method  TimeUtils.setLocale(locale)
+	*@param   locale  -  The locale of the wording
+	*/
+	public static final void setLocale(Locale locale)
+	{
+		language = (locale != null) ? TimeLocales.indexOf(locale) : TimeLocales.ENGLISH;
+	}
+
+	private static String toRelativeTime(long timeInMS, long now, int lang)
+	{
+		long diff = now - timeInMS;
+		int unit = unitOf(diff);
+
+		if(unit < 0)
+			return TimeLocales.JUST_NOW[lang];
+
+		long quot = Math.abs(diff / TIME_IN_MILLIS[unit]);
+		if(quot >= CACHED_COUNTS)
+			return appendTo(new StringBuilder(32), timeInMS, now, lang).toString();
+
+		int direction = (diff < 0) ? TimeLocales.FUTURE : TimeLocales.PAST;
+		int index = ((lang * 2 + direction) * TIME_IN_MILLIS.length + unit) * CACHED_COUNTS + (int) quot;
+		String label = LABELS[index];
+		if(label == null)
+		{
+			label = appendTo(new StringBuilder(32), timeInMS, now, lang).toString();
+			LABELS[index] = label;
+		}
+
+		return label;
+	}
+
+	private static StringBuilder appendTo(StringBuilder sb, long timeInMS, long now, int lang)
+	{
+		long diff = now - timeInMS;
+		int unit = unitOf(diff);
+
+		if(unit < 0)
+			return sb.append(TimeLocales.JUST_NOW[lang]);
+
+		int direction = (diff < 0) ? TimeLocales.FUTURE : TimeLocales.PAST;
+		long quot = Math.abs(diff / TIME_IN_MILLIS[unit]);
+
+		return sb.append(TimeLocales.prefix(lang, direction))
+			.append(quot)
+			.append(TimeLocales.suffix(lang, direction, unit, quot));
+	}
+
+	private static void format(long[] times, long now, String[] out, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+			out[i] = toRelativeTime(times[i], now);
+	}
+
+	private static void checkBatch(long[] times, int outLength)
+	{
+		if(outLength < times.length)
+			throw new IllegalArgumentException("Output holds " + outLength + " slots for " + times.length + " times");
+	}
+
+	private static ExecutorService getExecutor()
+	{
+		ExecutorService pool = executor;
+		if(pool == null)
+		{
+			synchronized(TimeUtils.class)
 			{
-				if(timeInMS >= num)
+				pool = executor;
+				if(pool == null)
 				{
-					str.append(quot)
-						.append(" ")
-						.append((quot > 1) ? toPluralForm(ext) : ext)
-						.append(" ago");
-
-					ret = str.toString();
-					break;
+					pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r)
+						{
+							Thread thread = new Thread(r, "TimeUtils-format");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+					executor = pool;
 				}
 			}
 		}
 
-		return ret;
+		return pool;
 	}
 
-	private static final String toPluralForm(String word)
+	// Index of the largest unit not exceeding |diff|, or -1 for "Just now"
+	private static int unitOf(long diff)
 	{
-		String[] consonant1 = {"s", "sh", "ch", "x", "o"};
-		char[] vowels = {'a', 'e', 'i', 'o', 'u'};
-		String wrd = word.toLowerCase();
+		long magnitude = (diff < 0) ? -diff : diff;
+		if(magnitude < 0)
+			magnitude = Long.MAX_VALUE;
 
-		for(String consonant : consonant1)
-			if(wrd.endsWith(consonant))
-				return word + "es";
+		int pos = Arrays.binarySearch(TIME_IN_MILLIS, magnitude);
+		return (pos >= 0) ? pos : -pos - 2;
+	}
 
-		if(wrd.endsWith("y"))
-		{
-			for(char vowel : vowels)
-				if(wrd.charAt(word.length()-2) == vowel)
-					return (word + "s");
-				else
-					continue;
+	private static void appendNumber(Appendable out, long n) throws IOException
+	{
+		long div = 1;
+		while(n / div >= 10)
+			div *= 10;
+
+		for(; div > 0; div /= 10)
+			out.append((char) ('0' + (n / div) % 10));
+	}
 
-			return (word.substring(0, word.length()-1) + "ies");
+	/*
+	* A relative time string and the instant, in
+	* milliseconds, at which it stops being accurate
+	*/
+	public static final class RelativeTime
+	{
+		public final String label;
+		public final long validUntil;
+
+		RelativeTime(String label, long validUntil)
+		{
+			this.label = label;
+			this.validUntil = validUntil;
 		}
 
-		if(wrd.endsWith("f"))
-			return (word.substring(0, word.length()-1) + "ves");
+		@Override
+		public String toString()
+		{
+			return label;
+		}
+	}
 
-		return (word + "s");
+	/*
+	* Source of the current time in milliseconds
+	*/
+	public interface Clock
+	{
+		long now();
 	}
 }